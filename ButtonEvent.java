@@ -0,0 +1,67 @@
+//
+// BUTTON EVENT
+// ============
+// One press of a button on the HMI.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+public final class ButtonEvent {
+	// The buttons that can be pressed.
+	public static final int SET_UP = 1;
+	public static final int SET_DOWN = 2;
+
+	private final long sequence;
+	private final int time;
+	private final int button;
+
+	//
+	// ButtonEvent()
+	// =============
+	ButtonEvent(long sequence, int time, int button) {
+		this.sequence = sequence;
+		this.time = time;
+		this.button = button;
+	}
+
+	//
+	// get sequence()
+	// ==============
+	// Returns the number of the press, counting from 1. A gap in the numbers
+	// a client receives means that presses were dropped because nobody read
+	// them in time.
+	//
+	public long sequence() {
+		return this.sequence;
+	}
+
+	//
+	// get time()
+	// ==========
+	// Returns when the button was pressed, in milliseconds since the HMI was
+	// started.
+	//
+	public int time() {
+		return this.time;
+	}
+
+	//
+	// get button()
+	// ============
+	public int button() {
+		return this.button;
+	}
+
+	//
+	// toString()
+	// ==========
+	// Formats the event as in the BTN command, such as "12,53120,U".
+	//
+	@Override
+	public String toString() {
+		return sequence + "," + time + "," + ((button == SET_UP) ? "U" : "D");
+	}
+}
@@ -0,0 +1,206 @@
+//
+// BUTTON EVENT QUEUE
+// ==================
+// Captures the presses of the HMI's buttons so that the clients can read
+// every one of them, in order, from any thread.
+//
+// Documentation
+// =============
+// Each press is added to the queue on the Swing event dispatch thread as a
+// ButtonEvent with the next sequence number and the time it was pressed. The
+// server worker threads take the presses off the queue, oldest first, for the
+// clients that ask for them with poll() and pollExcept(). Each press is taken
+// by only one reader.
+//
+// The queue is a fixed-size ring indexed by two ever-increasing positions:
+// head, the next event to be read, and tail, the next one to be written. The
+// sequence numbers count every press, starting at one. There is only one
+// writer, so it simply stores the event in the slot at the tail and
+// then moves the tail on. Readers claim the event at the head by moving the
+// head on with a compare-and-set, retrying if another reader got there first.
+// Neither side ever takes a lock or waits for the other.
+//
+// If nobody reads the presses, a full ring drops its oldest event to make
+// room for the new one, so it never grows and the latest presses are kept.
+// A reader that was about to take a dropped event finds the head has moved
+// and takes the next one instead. The dropped presses are counted, and the
+// gap shows in the sequence numbers the clients receive.
+//
+// While there are listeners, each press is handed to them, on the event
+// dispatch thread, instead of being added to the ring, so that it can be
+// pushed to the clients straight away. A press is therefore delivered once:
+// either pushed to the listeners or queued for the readers, never both.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 A press handed to the listeners is no longer also queued.
+//            Added pollExcept() and removed drain().
+//
+package HVACsim;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ButtonEventQueue {
+	// Capacity of a queue created without one.
+	public static final int DEFAULT_CAPACITY = 256;
+
+	//
+	// Listener
+	// ========
+	// Told of each press as it is added to the queue, on the thread that
+	// added it. It must not block.
+	//
+	public interface Listener {
+		void buttonPressed(ButtonEvent event);
+	}
+
+	private final AtomicReferenceArray<ButtonEvent> ring;
+	private final int capacity;
+	private final AtomicLong head = new AtomicLong(0);
+	private final AtomicLong tail = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private final AtomicLong pressed = new AtomicLong(0);
+	private final long startTime = System.nanoTime();
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	//
+	// ButtonEventQueue()
+	// ==================
+	public ButtonEventQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	//
+	// ButtonEventQueue()
+	// ==================
+	// capacity			Largest number of presses held before the oldest are
+	//					dropped.
+	//
+	public ButtonEventQueue(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.ring = new AtomicReferenceArray<ButtonEvent>(this.capacity);
+	}
+
+	//
+	// add()
+	// =====
+	// Records a press of a button. The press is handed to the listeners if
+	// there are any, and otherwise queued for the readers. Must only be
+	// called from one thread, normally the event dispatch thread.
+	//
+	public ButtonEvent add(int button) {
+		long position = tail.get();
+		long first;
+		boolean delivered = false;
+		ButtonEvent event = new ButtonEvent(pressed.incrementAndGet(), (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), button);
+
+		for (Listener listener : listeners) {
+			listener.buttonPressed(event);
+			delivered = true;
+		}
+		if (delivered) {
+			return event;
+		}
+
+		// Drop the oldest event if the ring is full.
+		while (position - (first = head.get()) >= capacity) {
+			if (head.compareAndSet(first, first + 1)) {
+				dropped.incrementAndGet();
+			}
+		}
+		ring.set((int) (position % capacity), event);
+		tail.set(position + 1);
+		return event;
+	}
+
+	//
+	// poll()
+	// ======
+	// Takes the oldest press off the queue.
+	//
+	// returns			The press, or null if there are none.
+	//
+	public ButtonEvent poll() {
+		return pollExcept(0);
+	}
+
+	//
+	// pollExcept()
+	// ============
+	// Takes the oldest press off the queue unless it is a press of the
+	// given button, which is left on the queue.
+	//
+	// button			The button whose press is left on the queue, or 0 to
+	//					take a press of any button.
+	//
+	// returns			The press, or null if there are none or the oldest is
+	//					of the given button.
+	//
+	public ButtonEvent pollExcept(int button) {
+		long position;
+		ButtonEvent event;
+
+		do {
+			position = head.get();
+			if (position >= tail.get()) {
+				return null;
+			}
+			event = ring.get((int) (position % capacity));
+			if (event.button() == button) {
+				return null;
+			}
+		} while (!head.compareAndSet(position, position + 1));
+		return event;
+	}
+
+	//
+	// addListener()
+	// =============
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	//
+	// removeListener()
+	// ================
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	//
+	// get capacity()
+	// ==============
+	public int capacity() {
+		return this.capacity;
+	}
+
+	//
+	// get size()
+	// ==========
+	// Returns the number of presses waiting to be read.
+	//
+	public int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+
+	//
+	// get dropped()
+	// =============
+	// Returns the number of presses dropped because the queue was full.
+	//
+	public long dropped() {
+		return dropped.get();
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "ButtonEventQueue pressed=" + pressed.get() + " waiting=" + size() + " dropped=" + dropped();
+	}
+}
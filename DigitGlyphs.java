@@ -0,0 +1,122 @@
+//
+// DIGIT GLYPHS
+// ============
+// The images of the digits on one size of the HMI's LED panels, decoded and
+// scaled once when the HMI is created.
+//
+// Documentation
+// =============
+// Each LED panel digit shows one of twelve glyphs: the digits 0 to 9, a blank
+// and a minus sign. The glyphs are read from the digitLarge_ images in the
+// graphics directory and drawn side by side into a single sprite sheet image,
+// scaled to the panel's digit size for the smaller panels. Both happen once,
+// in the constructor, so painting a digit afterwards only copies its cell
+// from the sheet: there is no disk access, image decoding or scaling while
+// the simulation is running.
+//
+// The glyph set never changes once it has been created, so it can be shared
+// by every LedDisplay of the same size.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 The glyphs are now held in one sprite sheet that the
+//            LedDisplay paints from, instead of as an Icon each.
+//
+package HVACsim;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import javax.swing.ImageIcon;
+
+public final class DigitGlyphs {
+	// Index of the blank and minus glyphs, after the ten digits.
+	public static final int BLANK = 10;
+	public static final int MINUS = 11;
+	public static final int GLYPH_COUNT = 12;
+
+	private final BufferedImage sheet;
+	private final int width;
+	private final int height;
+
+	//
+	// DigitGlyphs()
+	// =============
+	// Loads the full size glyphs.
+	//
+	// graphicsPath		Directory the digitLarge_ images are loaded from.
+	//
+	public DigitGlyphs(String graphicsPath) {
+		this(graphicsPath, 0, 0);
+	}
+
+	//
+	// DigitGlyphs()
+	// =============
+	// Loads the glyphs and scales them to a digit size in pixels. With a
+	// width or height of 0, the glyphs are kept at the size of the images.
+	//
+	public DigitGlyphs(String graphicsPath, int width, int height) {
+		ImageIcon[] images = new ImageIcon[GLYPH_COUNT];
+		Graphics2D graphics;
+
+		for (int digit = 0; digit <= 9; digit++) {
+			images[digit] = new ImageIcon(graphicsPath + "digitLarge_" + digit + ".png");
+		}
+		images[BLANK] = new ImageIcon(graphicsPath + "digitLarge_Blank.png");
+		images[MINUS] = new ImageIcon(graphicsPath + "digitLarge_Minus.png");
+
+		if ((width <= 0) || (height <= 0)) {
+			width = images[0].getIconWidth();
+			height = images[0].getIconHeight();
+		}
+		this.width = Math.max(1, width);
+		this.height = Math.max(1, height);
+
+		// An image that cannot be read leaves its cell empty.
+		sheet = new BufferedImage(this.width * GLYPH_COUNT, this.height, BufferedImage.TYPE_INT_ARGB);
+		graphics = sheet.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			for (int glyph = 0; glyph < GLYPH_COUNT; glyph++) {
+				if ((images[glyph].getIconWidth() > 0) && (images[glyph].getIconHeight() > 0)) {
+					graphics.drawImage(images[glyph].getImage(), glyph * this.width, 0, this.width, this.height, null);
+				}
+			}
+		} finally {
+			graphics.dispose();
+		}
+	}
+
+	//
+	// paint()
+	// =======
+	// Paints a glyph, a digit from 0 to 9, BLANK or MINUS, with its top left
+	// corner at x, y.
+	//
+	public void paint(Graphics graphics, int glyph, int x, int y) {
+		int sheetX = glyph * width;
+
+		graphics.drawImage(sheet, x, y, x + width, y + height, sheetX, 0, sheetX + width, height, null);
+	}
+
+	//
+	// get width()
+	// ===========
+	// Returns the width of each glyph in pixels.
+	//
+	public int width() {
+		return this.width;
+	}
+
+	//
+	// get height()
+	// ============
+	// Returns the height of each glyph in pixels.
+	//
+	public int height() {
+		return this.height;
+	}
+}
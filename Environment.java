@@ -11,21 +11,78 @@
 // 13.01.2020 BRD Original version.
 // 21.01.2020 BRD Migrated the external event handler into here based on feedback
 //                from the emsoft team.
+// 17.10.2026 The external event handler now takes the reusable NIOpacket
+//            view directly so that commands can be handled without
+//            converting their data to Strings first.
+// 17.10.2026 Defined opcodes for the commands so that clients can use the
+//            binary packet protocol. Responses are now written through
+//            an NIOresponse in the protocol the client negotiated.
+// 17.10.2026 Replaced the switch on the command string with handlers
+//            registered by opcode in the command table.
+// 17.10.2026 The environment is now advanced by a TickScheduler on a
+//            monotonic clock instead of a busy-wait loop polling the
+//            wall clock.
+// 17.10.2026 Added the SimulationClock so that the environment can run
+//            in real time, scaled or free running. The model now uses
+//            the simulated time rather than counting cycles.
+// 17.10.2026 Added the STP command for lockstep co-simulation.
+// 17.10.2026 The zone temperatures and set temperatures are now held in a
+//            ZoneStore instead of a field for each zone.
+// 17.10.2026 Replaced the random walk of the zone 1 temperature with a
+//            ThermalSolver that models the heat flowing between the
+//            zones, the outdoor air and each zone's HVAC unit.
+// 17.10.2026 Requests now read the zones from an immutable ZoneSnapshot
+//            published at the end of each tick, and set temperatures
+//            are handed to the environment thread through a queue.
+// 17.10.2026 Temperatures are published, sent and displayed as fixed-
+//            point centi-degrees. Removed the DecimalFormat rounding.
+// 17.10.2026 Random numbers now come from a per-zone stream derived from a
+//            seed for the run, so that runs can be reproduced.
+// 17.10.2026 Several buildings can now be simulated in the same JVM,
+//            sharing a clock, tick scheduler and solver pool. Only a
+//            building with an HMI updates it.
+// 17.10.2026 The environment now updates an EnvironmentView rather than
+//            the HMIui itself, so that it can run without a display.
+// 17.10.2026 Added the BTN command to read or push every button press
+//            from the view's ButtonEventQueue. SW1 now reads the same
+//            queue.
+// 17.10.2026 Added the SUB and UNS commands so that clients can have the
+//            zone temperatures pushed to them when they change instead
+//            of polling GZ1.
+// 17.10.2026 Documented the rules the command handlers follow so that
+//            they can run on several server worker threads at once.
+// 17.10.2026 The zone 1 temperature is logged at most once every
+//            LOG_INTERVAL rather than on every tick.
+// 17.10.2026 SW1 takes at most one press of each button per request so
+//            that no presses are lost. A press pushed to the BTN
+//            subscribers is no longer queued as well, and BTN replies are
+//            built straight from the queue.
+// 17.10.2026 The SUB deadband is in hundredths of a degree Fahrenheit,
+//            the unit the temperatures are sent in.
+// 17.10.2026 After the scheduler misses ticks, the thermal solver covers
+//            the simulated time of the missed ticks as well, up to
+//            MAX_CATCH_UP_TICKS, so that the temperatures keep up with the
+//            clock.
+// 17.10.2026 DZ1 and DS1 pass ZONE1 to the view, which numbers its zones
+//            from 0 like the ZoneStore.
+// 17.10.2026 A binary BTN reply holds at most BINARY_BTN_PRESSES presses,
+//            so that it stays within NIOserver.MAX_BINARY_VALUES.
 //
 package HVACsim;
 
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.lang.Math;
-import java.text.DecimalFormat;
 
-public class Environment implements Runnable {
+public class Environment implements Runnable, TickListener {
 	//
 	// Define environment characteristics
 	// ==================================
 	// Define module-level data to represent characteristics of the
 	// environment that can vary as the simulation progresses. The
-	// HMIui requests these from the Environment when the model
+	// EnvironmentView requests these from the Environment when the model
 	// view needs to be refreshed.
 	//
 	// In this example, note that the temperature of each zone in the
@@ -34,27 +91,144 @@ public class Environment implements Runnable {
 	// of a different part of the building. The zone set temperature
 	// is something: it is a managed property of each zone controller,
 	// set by the user not the environment.
+	//
+	// The state of every zone is held in a ZoneStore indexed by zone id.
+	// The zones of this example building are added by defineZones().
 	//  
-	//int Zone1temperature = 18;
-	//int Zone2temperature = 18;
-	//int Zone3temperature = 18;
+	static final int ZONE1 = 0;
+	static final int ZONE2 = 1;
+	static final int ZONE3 = 2;
+	
+	// Set temperature of each zone until its controller sends one.
+	private static final float DEFAULT_SETPOINT = (float) 21.0;
+	
+	// Size of the outlier temperature spikes.
+	private static final float OUTLIER_SPIKE = (float) 10.0;
+	
+	// Characteristics of the rooms in this example building. The walls
+	// between the zones conduct more heat than the external walls.
+	private static final float ROOM_HEAT_CAPACITY = (float) 300000.0;	// J/K
+	private static final float EXTERNAL_WALL_CONDUCTANCE = (float) 40.0;	// W/K
+	private static final float INTERNAL_WALL_CONDUCTANCE = (float) 60.0;	// W/K
+	private static final float HVAC_POWER = (float) 3000.0;				// W
+	
+	// HVAC unit output per degree below or above the set temperature.
+	private static final float HVAC_GAIN = (float) 0.5;
+	
+	private final ZoneStore zones = new ZoneStore();
+	private final ThermalNetwork network = new ThermalNetwork();
+	private final ThermalSolver solver;
+	
+	// Seed for the run and the random number generator of each zone. See
+	// RandomStreams.
+	private long seed = RandomStreams.newSeed();
+	private RandomStreams random;
+	
+	// State of the zones at the end of the last tick, for the server threads
+	// to read. See ZoneSnapshot.
+	private volatile ZoneSnapshot snapshot;
 	
-	float Zone1temperature = (float) 14.3;
-	float savedZone1temperature = Zone1temperature;
-	float Zone2temperature = (float) 18.7;
-	float Zone3temperature = (float) 19.18;
+	// Set temperatures received from the clients, waiting to be applied to
+	// the zone store by the environment thread at the start of the next tick.
+	private final ConcurrentLinkedQueue<SetpointChange> setpointChanges = new ConcurrentLinkedQueue<SetpointChange>();
 	
+	// True while the zone 1 temperature holds an outlier spike that should
+	// be removed again on the next tick.
+	private boolean outlierActive = false;
 	
-	long elapsedTime = System.currentTimeMillis() / 1000;
 	boolean temperatureIncrease = false;
 	
+	// Simulated time, in milliseconds, after which outlier temperature
+	// spikes can be generated.
+	private static final long OUTLIER_START_TIME = 20000;
+	
+	// Command opcodes
+	// ===============
+	// The opcode that represents each command in the binary packet protocol.
+	// Please ensure that any changes to these are also implemented in the
+	// clients that use the binary protocol.
+	//
+	static final int OP_GZ1 = 1;
+	static final int OP_GZ2 = 2;
+	static final int OP_SW1 = 3;
+	static final int OP_DZ1 = 4;
+	static final int OP_DZ2 = 5;
+	static final int OP_DS1 = 6;
+	static final int OP_DS2 = 7;
+	static final int OP_STP = 8;
+	static final int OP_BTN = 9;
+	
+	// Most presses in a binary BTN reply, at three values each.
+	static final int BINARY_BTN_PRESSES = NIOserver.MAX_BINARY_VALUES / 3;
+	static final int OP_SUB = 10;
+	static final int OP_UNS = 11;
+	
+	// Returned by commandTemperature() when a command has no valid temperature.
+	private static final int NO_TEMPERATURE = Integer.MIN_VALUE;
+	
 	// Internal environment control
 	// ============================
 	private static boolean isSilent = false;
-	private HMIui ui;
+	private final EnvironmentView view;
+	private final NIOcommandTable commandTable = new NIOcommandTable();
+	private final SimulationClock clock;
+	private volatile TickScheduler scheduler = null;
+	
+	// The zone 1 temperature is written to the console at most once in this
+	// many milliseconds of real time, so that a free running simulation is
+	// not held up by console output on every tick.
+	private static final long LOG_INTERVAL = 2000;
+	private long lastLogTime = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(LOG_INTERVAL);
+	
+	// When the scheduler skips missed ticks, the next tick passes the
+	// simulated time of the skipped ones to the solver too, which splits it
+	// into stable sub-steps. A gap of more than this many ticks, such as
+	// after the machine was suspended, is only caught up by this many so
+	// that one tick cannot take arbitrarily long.
+	private static final long MAX_CATCH_UP_TICKS = 10;
+	private long lastTickNumber = 0;
 	
-	public Environment(HMIui ui) {
-		this.ui = ui;
+	// Clients that have asked for the button presses to be pushed to them,
+	// and the listener on the view's button event queue for each one.
+	private final ConcurrentHashMap<NIOresponse, ButtonEventQueue.Listener> buttonSubscribers = new ConcurrentHashMap<NIOresponse, ButtonEventQueue.Listener>();
+	
+	// Clients that have subscribed to the zone temperatures.
+	private final ZoneSubscriptions subscriptions;
+	
+	//
+	// Environment()
+	// =============
+	// Creates a building with its own clock and solver threads, which is
+	// advanced by its own TickScheduler when the environment is run.
+	//
+	public Environment(EnvironmentView view) {
+		this(view, new SimulationClock(), ThermalSolver.newPool(Runtime.getRuntime().availableProcessors()));
+	}
+	
+	//
+	// Environment()
+	// =============
+	// Creates one of several buildings simulated in the same JVM. Each is
+	// added to a TickScheduler shared by all of them with attach() rather
+	// than being run on a thread of its own.
+	//
+	// view			The view of the building, such as its HMIui. With
+	//					null, the building runs headless.
+	//
+	// clock			The simulation clock shared by all the buildings.
+	//
+	// pool				Threads shared by the thermal solvers of all the
+	//					buildings, or null to solve on the tick thread.
+	//
+	public Environment(EnvironmentView view, SimulationClock clock, ForkJoinPool pool) {
+		this.view = (view != null) ? view : new HeadlessView();
+		this.clock = clock;
+		this.solver = new ThermalSolver(network, pool);
+		
+		defineZones();
+		defineCommands();
+		snapshot = zones.snapshot(0, 0);
+		subscriptions = new ZoneSubscriptions(zones.zoneCount());
 	}
 	
 	//
@@ -63,64 +237,198 @@ public class Environment implements Runnable {
 	// This function manages all changes in the environment using custom 
 	// rules and timers.
 	// 
-	// Note that it regularly releases its timeslice to ensure other threads
-	// do not get delayed as it executes its main loop.
+	// The environment is advanced by a TickScheduler that calls tick() once
+	// every tick period of the simulation clock. The thread sleeps between
+	// ticks rather than polling the clock.
 	//
 	private void runEnvironment() {
-		final int MAX_TEMP = 50;
-		final int MIN_TEMP = -50;
-		int newTemperature = 0;
-		long newElapsedTime = 0;
-		int cycleCount = 0;
+		TickScheduler scheduler = new TickScheduler(clock);
+		
+		attach(scheduler);
+		scheduler.run();
+	}
+	
+	//
+	// attach()
+	// ========
+	// Adds the environment to a TickScheduler that advances it, along with
+	// any other buildings on the same scheduler. The seed must be set before
+	// the environment is attached.
+	//
+	public void attach(TickScheduler scheduler) {
+		random = new RandomStreams(seed, zones.zoneCount());
+		say("Environment random seed " + seed);
 		
-		DecimalFormat df = new DecimalFormat();
-		df.setMaximumFractionDigits(2);
-		//System.out.println(df.format(decimalNumber));
+		this.scheduler = scheduler;
+		scheduler.addListener(this);
+	}
+	
+	//
+	// tick()
+	// ======
+	// Calculates the new state of the environment for one tick. The HVAC
+	// unit of each zone responds to its set temperature, then the thermal
+	// solver calculates the heat that has flowed between the zones, the
+	// outdoor air and the HVAC units since the previous tick, which is more
+	// than one tick period if the scheduler missed some.
+	//
+	@Override
+	public void tick(long tickNumber) {
+		float temperature;
+		long elapsedTicks = 1;
 		
+		if (lastTickNumber > 0) {
+			elapsedTicks = Math.max(1, Math.min(tickNumber - lastTickNumber, MAX_CATCH_UP_TICKS));
+		}
+		lastTickNumber = tickNumber;
 		
-		while (true) {
-			newElapsedTime = System.currentTimeMillis();
-			// RA_BRD BEWARE ! - this won't wrap around properly at midnight, Cinderella....
-			if ((newElapsedTime - elapsedTime) >= 2000) {
-				elapsedTime = newElapsedTime;
-				cycleCount++;
-				
-				if (cycleCount > 10) {
-					int min = 1;
-					int max = 10;
-					int value = 0;
-					Random r = new Random();
-					value = r.nextInt((max - min) + 1) + min;
-					if (value > 9) {
-						// Generate an outlier temperature spike
-						Zone1temperature = Zone1temperature + (float) 10.0;
-						ui.labelZone3.setText(Zone1temperature + "\u00B0");
-						say("Zone 1 temperature " + Zone1temperature);
-					} else {	
-						// Calculate a new random temperature
-						Zone1temperature = savedZone1temperature; 
-						newTemperature = (int) (Math.random() * ((MAX_TEMP - MIN_TEMP) + 1 )) + MIN_TEMP;
-						Zone1temperature = Zone1temperature + ((float) newTemperature / 100);
-						Zone1temperature = Float.valueOf(df.format(Zone1temperature));
-						ui.labelZone3.setText(Zone1temperature + "\u00B0");
-						say("Zone 1 temperature " + Zone1temperature);
-						savedZone1temperature = Zone1temperature;
-					}		
-				} else {	
-					// Calculate a new random temperature
-					Zone1temperature = savedZone1temperature; 
-					newTemperature = (int) (Math.random() * ((MAX_TEMP - MIN_TEMP) + 1 )) + MIN_TEMP;
-					Zone1temperature = Zone1temperature + ((float) newTemperature / 100);
-					Zone1temperature = Float.valueOf(df.format(Zone1temperature));
-					ui.labelZone3.setText(Zone1temperature + "\u00B0");
-					say("Zone 1 temperature " + Zone1temperature);
-					savedZone1temperature = Zone1temperature;
-				}
-			}	
+		applySetpointChanges();
+		random.ensureZones(zones.zoneCount());
 		
-			Thread.currentThread();
-			Thread.yield();
+		// An outlier spike only lasts for one tick.
+		if (outlierActive) {
+			zones.temperature(ZONE1, zones.temperature(ZONE1) - OUTLIER_SPIKE);
+			outlierActive = false;
 		}
+		
+		updateActuators();
+		solver.step(zones, (float) (elapsedTicks * clock.tickPeriod()) / 1000);
+		
+		temperature = zones.temperature(ZONE1);
+		if (clock.simulatedTime() > OUTLIER_START_TIME) {
+			int min = 1;
+			int max = 10;
+			int value = 0;
+			value = random.stream(ZONE1).nextInt(min, max + 1);
+			if (value > 9) {
+				// Generate an outlier temperature spike
+				temperature = temperature + OUTLIER_SPIKE;
+				outlierActive = true;
+				zones.temperature(ZONE1, temperature);
+			}
+		}
+		snapshot = zones.snapshot(tickNumber, clock.simulatedTime());
+		subscriptions.publish(snapshot);
+		view.showZoneTemperature(ZONE1, snapshot.temperature(ZONE1));
+		logTemperature();
+	}
+	
+	//
+	// logTemperature()
+	// ================
+	// Writes the zone 1 temperature to the console, unless it was written
+	// less than LOG_INTERVAL ago.
+	//
+	private void logTemperature() {
+		long now = System.nanoTime();
+		
+		if (now - lastLogTime >= TimeUnit.MILLISECONDS.toNanos(LOG_INTERVAL)) {
+			lastLogTime = now;
+			say("Zone 1 temperature " + Temperature.toString(snapshot.temperature(ZONE1)));
+		}
+	}
+	
+	//
+	// applySetpointChanges()
+	// ======================
+	private void applySetpointChanges() {
+		SetpointChange change;
+		
+		while ((change = setpointChanges.poll()) != null) {
+			zones.setpoint(change.zone, change.setpoint);
+		}
+	}
+	
+	//
+	// SetpointChange
+	// ==============
+	private static final class SetpointChange {
+		final int zone;
+		final float setpoint;
+		
+		SetpointChange(int zone, float setpoint) {
+			this.zone = zone;
+			this.setpoint = setpoint;
+		}
+	}
+	
+	//
+	// updateActuators()
+	// =================
+	// Sets the output of each zone's HVAC unit in proportion to how far the
+	// zone is from its set temperature, up to full heating or cooling.
+	//
+	private void updateActuators() {
+		float[] temperature = zones.temperatures();
+		float[] setpoint = zones.setpoints();
+		float[] actuator = zones.actuators();
+		float output;
+		
+		for (int zone = 0; zone < zones.zoneCount(); zone++) {
+			output = (setpoint[zone] - temperature[zone]) * HVAC_GAIN;
+			actuator[zone] = Math.max(-1, Math.min(1, output));
+		}
+	}
+	
+	//
+	// set seed()
+	// ==========
+	// Sets the seed for the run, so that a previous run can be reproduced.
+	// Given the same seed, settings and client requests, a free running or
+	// lockstep simulation calculates exactly the same temperatures on every
+	// tick, however many threads the model uses. This must be set before the
+	// environment is started.
+	//
+	public void seed(long seed) {
+		this.seed = seed;
+	}
+	
+	//
+	// get seed()
+	// ==========
+	// Returns the seed for the run. Unless one has been set, a new seed is
+	// chosen for every run and written to the console when it starts.
+	//
+	public long seed() {
+		return this.seed;
+	}
+	
+	//
+	// get network()
+	// =============
+	// Returns the thermal network of the building. Further zones added to
+	// the zone store must also be added here.
+	//
+	public ThermalNetwork network() {
+		return this.network;
+	}
+	
+	//
+	// get solver()
+	// ============
+	public ThermalSolver solver() {
+		return this.solver;
+	}
+	
+	//
+	// get clock()
+	// ===========
+	// Returns the clock that keeps the simulated time. Its mode and tick
+	// period can be changed before the environment is started, for example
+	// to run the simulation faster than real time.
+	//
+	public SimulationClock clock() {
+		return this.clock;
+	}
+	
+	//
+	// get scheduler()
+	// ===============
+	// Returns the scheduler advancing the environment, or null if it has not
+	// been started. Its counters record any late or missed ticks.
+	//
+	public TickScheduler scheduler() {
+		return this.scheduler;
 	}
 	
 	//
@@ -143,82 +451,518 @@ public class Environment implements Runnable {
 	//              is required.
 	//
 	public String externalEventHandler(String command, String commandData) {
-		String responsePacket = "";
-		int pointPosn = 0;
-		int temperature = 0;
-		float fahrenheitTemperature = 0;
+		NIOpacket packet = new NIOpacket();
+		NIOresponse response = new NIOresponse();
+		packet.command(command);
+		packet.commandData(commandData);
+		externalEventHandler(packet, response);
+		return response.captured();
+	}
+
+	//
+	// externalEventHandler()
+	// ======================
+	// As above, but takes the packet handed out by the server session and
+	// writes any response through the session's NIOresponse. The packet is
+	// a view over the bytes received that is only valid for the duration of
+	// the call. The command is dispatched to the handler registered for its
+	// opcode in defineCommands().
+	//
+	// When the server has worker threads, this is called on several of them
+	// at once, for different clients, while the environment thread ticks.
+	// A handler must therefore only read the zones from the published
+	// snapshot, hand changes to the environment thread through a concurrent
+	// queue such as setpointChanges, and update the view, which is itself
+	// thread-safe. It must not touch the zone store or other state owned by
+	// the environment thread.
+	//
+	public void externalEventHandler(NIOpacket packet, NIOresponse response) {
+		if (!commandTable.dispatch(packet, response)) {
+			say("Unrecognised command '" + packet.command() + "' with commandData '" + packet.commandData() + "'");
+		}
+	}
+	
+	//
+	// defineZones()
+	// =============
+	// Adds the zones of the building being simulated to the zone store and
+	// to its thermal network. This example is a single floor of three rooms
+	// in a row, so zone 2 shares a wall with each of the others.
+	//
+	private void defineZones() {
+		zones.addZone((float) 14.3, DEFAULT_SETPOINT);		// ZONE1
+		zones.addZone((float) 18.7, DEFAULT_SETPOINT);		// ZONE2
+		zones.addZone((float) 19.18, DEFAULT_SETPOINT);		// ZONE3
+		
+		network.startPartition();
+		for (int zone = 0; zone < zones.zoneCount(); zone++) {
+			network.addZone(ROOM_HEAT_CAPACITY, EXTERNAL_WALL_CONDUCTANCE, HVAC_POWER);
+		}
+		network.connect(ZONE1, ZONE2, INTERNAL_WALL_CONDUCTANCE);
+		network.connect(ZONE2, ZONE3, INTERNAL_WALL_CONDUCTANCE);
+		network.compile();
+	}
+	
+	//
+	// defineCommands()
+	// ================
+	// Registers the handler for each command that has been defined for this
+	// particular simulation. Commands defined without a handler, such as the
+	// zone 2 commands, are accepted but ignored.
+	//
+	// Requests from clients that negotiated the binary protocol carry their
+	// arguments as values rather than as command data, and must be answered
+	// with binary values.
+	//
+	private void defineCommands() {
+		commandTable.register("GZ1", OP_GZ1, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				getZoneTemperature(request, response);
+			}
+		});
+		commandTable.register("SW1", OP_SW1, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				getSwitches(request, response);
+			}
+		});
+		commandTable.register("DZ1", OP_DZ1, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				displayZoneTemperature(request, response);
+			}
+		});
+		commandTable.register("DS1", OP_DS1, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				displaySetTemperature(request, response);
+			}
+		});
+		commandTable.register("STP", OP_STP, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				stepSimulation(request, response);
+			}
+		});
+		commandTable.register("BTN", OP_BTN, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				getButtonEvents(request, response);
+			}
+		});
+		commandTable.register("SUB", OP_SUB, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				subscribeZone(request, response);
+			}
+		});
+		commandTable.register("UNS", OP_UNS, new NIOcommandHandler() {
+			@Override
+			public void handle(NIOpacket request, NIOresponse response) {
+				unsubscribeZone(request, response);
+			}
+		});
+		
+		// Zone 2 commands, e.g.
+		//   responsePacket = "*GZ2|" + Zone2temperature + "|&";
+		//   packet = "*DZ" + to_string(ZONE()) + "|" + to_string(TEMP()) +"|&";
+		//   packet = "*DS" + to_string(ZONE()) + "|" + to_string(SET_TEMP()) +"|&";
+		commandTable.define("GZ2", OP_GZ2);
+		commandTable.define("DZ2", OP_DZ2);
+		commandTable.define("DS2", OP_DS2);
+	}
+	
+	//
+	// getZoneTemperature()
+	// ====================
+	// GZ1: Requesting the current temperature in zone 1. Note that the sensor being 
+	// simulated outputs temperatures in Fahrenheit, to two decimal places.
+	//
+	private void getZoneTemperature(NIOpacket request, NIOresponse response) {
+		int fahrenheitTemperature = Temperature.toFahrenheit(snapshot.temperature(ZONE1));
 		
-		switch (command) {
-		case "GZ1":
-			// Requesting the current temperature in zone 1. Note that the sensor being simulated
-			// outputs temperatures in Fahrenheit. 
-			fahrenheitTemperature = (Zone1temperature * (float) 1.8) + 32 ;
-			responsePacket = "*GZ1|" + fahrenheitTemperature + "|&";   
-			break;
-			
-		case "GZ2":
-	//		responsePacket = "*GZ2|" + Zone2temperature + "|&";
-			break;
-			
-		case "SW1":
-			// Read the Zone 1 set temperature up and down buttons 
-			if (ui.cmdUpClicked()) {
-				responsePacket = "T";
-			} else {
-				responsePacket = "F";
+		if (response.isBinary()) {
+			response.value(OP_GZ1, fahrenheitTemperature);
+		} else {
+			response.decimal("GZ1", fahrenheitTemperature, Temperature.DECIMALS);
+		}
+	}
+	
+	//
+	// getSwitches()
+	// =============
+	// SW1: Read the Zone 1 set temperature up and down buttons. Takes at most
+	// one press of each button from the button event queue, oldest first,
+	// and reports which buttons they were. Any further presses are left on
+	// the queue for the next SW1, so a client that polls with SW1 sees every
+	// press, one per call. Use BTN to read every waiting press at once.
+	//
+	private void getSwitches(NIOpacket request, NIOresponse response) {
+		ButtonEventQueue buttonEvents = view.buttonEvents();
+		boolean upClicked = false;
+		boolean downClicked = false;
+		ButtonEvent event = buttonEvents.poll();
+		
+		// The second press is only taken if it is of the other button.
+		if (event != null) {
+			upClicked = (event.button() == ButtonEvent.SET_UP);
+			downClicked = !upClicked;
+			if (buttonEvents.pollExcept(event.button()) != null) {
+				upClicked = true;
+				downClicked = true;
 			}
-			
-			if (ui.cmdDownClicked()) {
-				responsePacket = responsePacket + "T";
-			} else {
-				responsePacket = responsePacket + "F";
+		}
+		
+		if (response.isBinary()) {
+			response.values(OP_SW1, upClicked ? 1 : 0, downClicked ? 1 : 0);
+		} else {
+			response.text("SW1|" + (upClicked ? "T" : "F") + (downClicked ? "T" : "F") + "|&");
+		}
+	}
+	
+	//
+	// getButtonEvents()
+	// =================
+	// BTN: Reads every press of the zone 1 set temperature buttons that is
+	// waiting in the button event queue, in one request. The reply lists the
+	// presses oldest first, each as its sequence number, the time it was
+	// pressed in milliseconds and U for up or D for down, such as
+	// "*BTN|12,53120,U;13,53410,U|&". If there are none, the reply is
+	// "*BTN||&". Binary clients are sent three values per press, with 1 for
+	// up and 2 for down. A binary packet only has room for
+	// BINARY_BTN_PRESSES presses, so any more are left in the queue for the
+	// client's next BTN.
+	//
+	// A client can instead have each press pushed to it as it happens, so
+	// that it does not have to poll, by sending "*BTN|1|&" or a binary value
+	// of 1. Each press is then sent in the same form as soon as it is made,
+	// until the client sends "*BTN|0|&" or disconnects. The presses already
+	// waiting are sent in reply, either way. While any client is subscribed,
+	// a press is pushed to every subscriber instead of being queued, so it
+	// is not read again by BTN or SW1.
+	//
+	private void getButtonEvents(NIOpacket request, final NIOresponse response) {
+		ButtonEventQueue buttonEvents = view.buttonEvents();
+		int push = -1;
+		
+		if (request.isBinary()) {
+			if (request.valueCount() > 0) {
+				push = request.value(0);
 			}
-			responsePacket = "SW1|" + responsePacket + "|&";
-			break;
+		} else if (request.commandDataLength() > 0) {
+			try {
+				push = request.commandDataInt(0, request.commandDataLength());
+			} catch (NumberFormatException e) {
+				say("Invalid data '" + request.commandData() + "' for command '" + request.command() + "'");
+			}
+		}
 		
-		case "DZ1":
-			// Display the new temperature in zone 1
-			pointPosn = commandData.indexOf(".");
-			if (pointPosn > 0) {
-				temperature = Integer.parseInt(commandData.substring(0, pointPosn));
-				ui.showRoomTemperature(1, temperature); 
+		if (push == 1) {
+			ButtonEventQueue.Listener listener = new ButtonEventQueue.Listener() {
+				@Override
+				public void buttonPressed(ButtonEvent event) {
+					sendButtonEvent(response, event);
+					response.flush();
+				}
+			};
+			if (buttonSubscribers.putIfAbsent(response, listener) == null) {
+				buttonEvents.addListener(listener);
 			}
-	 		break;
+		} else if (push == 0) {
+			unsubscribeButtons(response);
+		}
+		sendButtonEvents(response, buttonEvents);
+	}
 	
-		case "DZ2":
-			// Display the new temperature in zone 2
-			//packet = "*DZ" + to_string(ZONE()) + "|" + to_string(TEMP()) +"|&";
-			//client.sendPacket(packet);
- 			break;
+	//
+	// sendButtonEvents()
+	// ==================
+	// Takes the presses waiting in the queue and sends them in one reply.
+	// A binary reply holds at most BINARY_BTN_PRESSES of them; the rest are
+	// left for the next request.
+	//
+	private void sendButtonEvents(NIOresponse response, ButtonEventQueue buttonEvents) {
+		ButtonEvent event;
+		int count = 0;
 		
-	    
-		case "DS1":
-			// Display the new set temperature for zone 1
-			pointPosn = commandData.indexOf(".");
-			if (pointPosn > 0) {
-				temperature = Integer.parseInt(commandData.substring(0, pointPosn));
-				ui.showSetTemperature(1, temperature); 
+		if (response.isBinary()) {
+			int[] values = new int[BINARY_BTN_PRESSES * 3];
+			while ((count < BINARY_BTN_PRESSES) && ((event = buttonEvents.poll()) != null)) {
+				values[count * 3] = (int) event.sequence();
+				values[(count * 3) + 1] = event.time();
+				values[(count * 3) + 2] = event.button();
+				count++;
 			}
-			break;
+			response.values(OP_BTN, values, count * 3);
+		} else {
+			StringBuilder packet = new StringBuilder("*BTN|");
+			while ((event = buttonEvents.poll()) != null) {
+				if (count++ > 0) {
+					packet.append(';');
+				}
+				packet.append(event);
+			}
+			response.text(packet.append("|&").toString());
+		}
+	}
+	
+	//
+	// sendButtonEvent()
+	// =================
+	// Sends one press pushed to a subscribed client.
+	//
+	private void sendButtonEvent(NIOresponse response, ButtonEvent event) {
+		if (response.isBinary()) {
+			response.values(OP_BTN, (int) event.sequence(), event.time(), event.button());
+		} else {
+			response.text("*BTN|" + event + "|&");
+		}
+	}
+	
+	//
+	// unsubscribeButtons()
+	// ====================
+	private void unsubscribeButtons(NIOresponse response) {
+		ButtonEventQueue.Listener listener = buttonSubscribers.remove(response);
 		
-		case "DS2":
-			// Display the new set temperature for zone 2
-			//packet = "*DS" + to_string(ZONE()) + "|" + to_string(SET_TEMP()) +"|&";
-			//client.sendPacket(packet);
-			break;
+		if (listener != null) {
+			view.buttonEvents().removeListener(listener);
+		}
+	}
+	
+	//
+	// subscribeZone()
+	// ===============
+	// SUB: Subscribes to the temperature of a zone, such as "*SUB|1|&" for
+	// zone 1. The current temperature is sent straight away, in the same
+	// form as the reply to GZ1, and then again each time it changes, so the
+	// client does not have to poll GZ1. A deadband can follow the zone, in
+	// hundredths of a degree Fahrenheit like the temperatures that are sent,
+	// such as "*SUB|1,50|&", in which case a temperature is only sent once
+	// it has moved more than half a degree Fahrenheit from the last one
+	// sent. Binary clients send the zone and the deadband as values, and are
+	// sent the zone and the temperature as values with the SUB opcode.
+	//
+	private void subscribeZone(NIOpacket request, NIOresponse response) {
+		int zone = -1;
+		int deadband = 0;
+		
+		if (request.isBinary()) {
+			if (request.valueCount() > 0) {
+				zone = request.value(0) - 1;
+			}
+			if (request.valueCount() > 1) {
+				deadband = request.value(1);
+			}
+		} else {
+			int separator = request.commandDataIndexOf(',');
+			try {
+				if (separator < 0) {
+					zone = request.commandDataInt(0, request.commandDataLength()) - 1;
+				} else {
+					zone = request.commandDataInt(0, separator) - 1;
+					deadband = request.commandDataInt(separator + 1, request.commandDataLength());
+				}
+			} catch (NumberFormatException e) {
+				say("Invalid subscription '" + request.commandData() + "' for command '" + request.command() + "'");
+				return;
+			}
+		}
 		
-		default:
-			say("Unrecognised command '" + command + "' with commandData '" + commandData + "'");
-			break;
+		if ((zone < 0) || (zone >= zones.zoneCount())) {
+			say("Invalid zone " + (zone + 1) + " for command '" + request.command() + "'");
+		} else {
+			subscriptions.subscribe(response, zone, deadband, snapshot);
 		}
-		return responsePacket;
+	}
+	
+	//
+	// unsubscribeZone()
+	// =================
+	// UNS: Cancels a subscription made with SUB, such as "*UNS|1|&".
+	//
+	private void unsubscribeZone(NIOpacket request, NIOresponse response) {
+		int zone = -1;
+		
+		if (request.isBinary()) {
+			if (request.valueCount() > 0) {
+				zone = request.value(0) - 1;
+			}
+		} else {
+			try {
+				zone = request.commandDataInt(0, request.commandDataLength()) - 1;
+			} catch (NumberFormatException e) {
+				say("Invalid zone '" + request.commandData() + "' for command '" + request.command() + "'");
+			}
+		}
+		subscriptions.unsubscribe(response, zone);
+	}
+	
+	//
+	// displayZoneTemperature()
+	// ========================
+	// DZ1: Display the new temperature in zone 1. The fraction is dropped
+	// rather than rounded, so "21.999" is shown as 21.
+	//
+	private void displayZoneTemperature(NIOpacket request, NIOresponse response) {
+		int temperature = commandTemperature(request);
+		
+		if (temperature != NO_TEMPERATURE) {
+			view.showRoomTemperature(ZONE1, Temperature.wholeDegrees(temperature)); 
+		}
+	}
+	
+	//
+	// displaySetTemperature()
+	// =======================
+	// DS1: Display the new set temperature for zone 1. As with DZ1, the
+	// fraction is dropped from the displayed value.
+	//
+	private void displaySetTemperature(NIOpacket request, NIOresponse response) {
+		int temperature = commandTemperature(request);
+		
+		if (temperature != NO_TEMPERATURE) {
+			setpointChanges.add(new SetpointChange(ZONE1, Temperature.toDegrees(temperature)));
+			view.showSetTemperature(ZONE1, Temperature.wholeDegrees(temperature)); 
+		}
+	}
+	
+	//
+	// stepSimulation()
+	// ================
+	// STP: Takes part in a lockstep co-simulation. The command data is the
+	// number of the tick the client has finished with, such as "*STP|41|&".
+	// The first STP from a client joins it to the simulation's lockstep
+	// barrier, and each later one acknowledges the current tick. Once every
+	// client taking part has acknowledged it, the next tick is calculated
+	// and each client is sent its number, such as "*STP|42|&". The client
+	// can then read the new state of the environment before acknowledging
+	// that tick in turn. A client leaves when it disconnects.
+	//
+	// A client that acknowledges a tick other than the current one, or that
+	// sends STP when the simulation is not in lockstep mode, is sent the
+	// number of the current tick straight away.
+	//
+	private void stepSimulation(NIOpacket request, final NIOresponse response) {
+		LockstepBarrier barrier = clock.barrier();
+		long tickNumber = -1;
+		
+		if (request.isBinary()) {
+			if (request.valueCount() > 0) {
+				tickNumber = request.value(0);
+			}
+		} else if (request.commandDataLength() > 0) {
+			try {
+				tickNumber = request.commandDataInt(0, request.commandDataLength());
+			} catch (NumberFormatException e) {
+				say("Invalid tick '" + request.commandData() + "' for command '" + request.command() + "'");
+			}
+		}
+		
+		if (clock.mode() == SimulationClock.LOCKSTEP) {
+			if (barrier.join(response, new LockstepBarrier.Participant() {
+				@Override
+				public void stepped(long tickNumber) {
+					sendTickNumber(response, tickNumber);
+					response.flush();
+				}
+			})) {
+				say("Lockstep client joined at tick " + barrier.tickNumber());
+				return;
+			}
+			if (barrier.acknowledge(response, tickNumber)) {
+				return;
+			}
+		}
+		sendTickNumber(response, (clock.mode() == SimulationClock.LOCKSTEP) ? barrier.tickNumber() : clock.tickNumber());
+	}
+	
+	//
+	// sendTickNumber()
+	// ================
+	private void sendTickNumber(NIOresponse response, long tickNumber) {
+		if (response.isBinary()) {
+			response.value(OP_STP, (int) tickNumber);
+		} else {
+			response.text("*STP|" + tickNumber + "|&");
+		}
+	}
+	
+	//
+	// sessionClosed()
+	// ===============
+	// Called by the server when a client disconnects, so that it no longer
+	// holds up a lockstep co-simulation or has button presses or zone
+	// temperatures pushed to it.
+	//
+	public void sessionClosed(NIOsession session) {
+		if (session != null) {
+			clock.barrier().leave(session.response);
+			unsubscribeButtons(session.response);
+			subscriptions.unsubscribeAll(session.response);
+		}
+	}
+	
+	//
+	// commandTemperature()
+	// ====================
+	// Returns the temperature sent with a display command in centi-degrees,
+	// or NO_TEMPERATURE if there is none. Text clients send the temperature
+	// as a decimal such as "21.500000" in the command data and binary
+	// clients send it in hundredths of a degree.
+	//
+	private int commandTemperature(NIOpacket packet) {
+		if (packet.isBinary()) {
+			return (packet.valueCount() > 0) ? packet.value(0) : NO_TEMPERATURE;
+		}
+		
+		try {
+			return packet.commandDataDecimal(Temperature.DECIMALS);
+		} catch (NumberFormatException e) {
+			say("Invalid temperature '" + packet.commandData() + "' for command '" + packet.command() + "'");
+		}
+		return NO_TEMPERATURE;
 	}
 
+	//
+	// get commandTable()
+	// ==================
+	// The commands this simulation understands, their binary protocol
+	// opcodes, handlers and invocation counters. Other simulations built on
+	// this Environment can register further commands here before the server
+	// is started.
+	//
+	public NIOcommandTable commandTable() {
+		return this.commandTable;
+	}
 	
 	// get Zone1temperature()
 	// ======================
 	public float Zone1temperature() {
-		return this.Zone1temperature;
+		return Temperature.toDegrees(snapshot.temperature(ZONE1));
+	}
+	
+	//
+	// get snapshot()
+	// ==============
+	// Returns the state of the zones at the end of the last tick. This can be
+	// called from any thread; read the zones from the returned snapshot so
+	// that they all come from the same tick.
+	//
+	public ZoneSnapshot snapshot() {
+		return this.snapshot;
+	}
+	
+	//
+	// get zones()
+	// ===========
+	// Returns the store holding the state of every zone. Once the
+	// environment is running, it must only be used by the environment
+	// thread. Other threads should use snapshot().
+	//
+	public ZoneStore zones() {
+		return this.zones;
 	}
 	
 	//
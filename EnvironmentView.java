@@ -0,0 +1,62 @@
+//
+// ENVIRONMENT VIEW
+// ================
+// The view of a building that the Environment updates as the simulation runs
+// and reads the user's controls from.
+//
+// Documentation
+// =============
+// The Environment only talks to its view through this interface, so the same
+// model can be shown on the HMIui or run without a display. HeadlessView is
+// the implementation for running without one, such as on a test or load
+// machine, where it only counts the updates.
+//
+// The methods can be called from the environment thread and from the server
+// worker threads, so an implementation must be thread-safe. A view that can
+// only be changed on the Swing event dispatch thread, such as the HMIui, is
+// wrapped in a ViewUpdater, which passes its updates to that thread.
+//
+// Every method that takes a zone takes its index in the ZoneStore, counting
+// from 0, so zone 1 of the building is Environment.ZONE1. A view that only
+// shows some of the zones ignores the updates for the others.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Replaced cmdUpClicked() and cmdDownClicked() with the
+//            buttonEvents() queue.
+// 17.10.2026 All the show methods now number the zones from 0.
+//
+package HVACsim;
+
+public interface EnvironmentView {
+	//
+	// buttonEvents()
+	// ==============
+	// Returns the queue that the presses of the view's buttons are added to.
+	//
+	ButtonEventQueue buttonEvents();
+
+	//
+	// showZoneTemperature()
+	// =====================
+	// Shows the temperature the model has calculated for a zone, in centi-
+	// degrees.
+	//
+	void showZoneTemperature(int zone, int temperature);
+
+	//
+	// showRoomTemperature()
+	// =====================
+	// Shows the room temperature sent by a zone controller, in whole
+	// degrees.
+	//
+	void showRoomTemperature(int zone, int displayTemperature);
+
+	//
+	// showSetTemperature()
+	// ====================
+	// Shows the set temperature sent by a zone controller, in whole degrees.
+	//
+	void showSetTemperature(int zone, int displayTemperature);
+}
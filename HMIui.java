@@ -22,6 +22,20 @@
 //				  updates the HMI. Switch presses are now buffered
 //				  in the HMI until the Environment asks for them.
 //				  Yay for Observer Patterns !!!
+// 17.10.2026 The LED panel digits are now worked out with integer
+//            arithmetic instead of by padding a String.
+// 17.10.2026 The HMI is now the EnvironmentView of the Environment.
+//            Added showZoneTemperature().
+// 17.10.2026 The LED panel digits are now decoded and scaled once into
+//            a DigitGlyphs cache when the HMI is created, instead of
+//            being loaded from disk on every update.
+// 17.10.2026 Button presses are now added to a ButtonEventQueue instead
+//            of being counted in unsynchronised ints.
+// 17.10.2026 Each LED panel is now a single LedDisplay component that
+//            paints its digits from a sprite sheet, instead of a
+//            JLabel per digit.
+// 17.10.2026 The show methods take zones numbered from 0 and ignore every
+//            zone but Environment.ZONE1, the only one the HMI shows.
 //
 package HVACsim;
 import java.awt.*;
@@ -30,7 +44,7 @@ import javax.swing.*;
 import javax.swing.border.Border;
 import java.lang.Math.*;
 
-public class HMIui extends JFrame{
+public class HMIui extends JFrame implements EnvironmentView {
 	private static final long serialVersionUID = 1L;
 	
 	//private Environment envr = new Environment();
@@ -47,6 +61,21 @@ public class HMIui extends JFrame{
 										// the BASE_LAYER.
 	private static int DEPTH = 1;		// <-RA_BRD What does this do?
 	
+	// Size in pixels of the digits on the small set temperature LED panels.
+	// They are made from the same images as the room temperature digits.
+	private static final int SET_DIGIT_WIDTH = 25;
+	private static final int SET_DIGIT_HEIGHT = 45;	// RA_BRD can we scale using the
+													// images Aspect ratio?
+	
+	// Distance between the digits on the room temperature and set
+	// temperature LED panels.
+	private static final int ROOM_DIGIT_PITCH = 44;
+	private static final int SET_DIGIT_PITCH = 30;
+	
+	// The glyphs for the room temperature and set temperature LED panels.
+	private DigitGlyphs largeDigits;
+	private DigitGlyphs smallDigits;
+	
 	// COMPONENT DEFINITIONS AND VALUES
 	// ================================
 	// The complete list distinct components that are needed for this
@@ -55,15 +84,13 @@ public class HMIui extends JFrame{
 	// the simulation is running. All other non-interactive components such
 	// as labels or images can be created later in-line as needed.
 	//
-	public JLabel digitTemp1 = new JLabel();
-	public JLabel digitTemp2 = new JLabel();
-	public JLabel digitTemp3 = new JLabel();
+	public LedDisplay roomDisplay;
 	
 	JButton cmdSetUp = new JButton("");
 	JButton cmdSetDown = new JButton("");
 	
-	int cmdSetUpCounter = 0;
-	int cmdSetDownCounter = 0;
+	// Presses of the set temperature buttons, waiting for the Environment.
+	private final ButtonEventQueue buttonEvents = new ButtonEventQueue();
 	
 	int Zone1temperature = 15;
 //	int Zone2temperature = 10;
@@ -73,9 +100,7 @@ public class HMIui extends JFrame{
 	int Zone2setTemperature = 0;
 	int Zone3setTemperature = 0;
 	
-	public JLabel digitSet1 = new JLabel();
-	public JLabel digitSet2 = new JLabel();
-	public JLabel digitSet3 = new JLabel();
+	public LedDisplay setDisplay;
 	
 	JLabel labelZone1 = new JLabel();
 	JLabel labelZone2 = new JLabel();
@@ -105,6 +130,10 @@ public class HMIui extends JFrame{
 	//
 	public HMIui(String title, int windowTop, int windowLeft, int windowWidth, int windowHeight)  {
 		//this.envr = envr; RA_BRD
+		
+		// Load the LED panel digits once, before any are displayed.
+		largeDigits = new DigitGlyphs(graphicsPath);
+		smallDigits = new DigitGlyphs(graphicsPath, SET_DIGIT_WIDTH, SET_DIGIT_HEIGHT);
 				
 		// Create and layout the components using a Swing GridBagLayout. All components are laid out
 		// on top of a JPanel called layoutPanel. This panel gets resized automatically as controls 
@@ -157,47 +186,17 @@ public class HMIui extends JFrame{
 		label.setBounds(248, 60, 120, 20);
 		layeredPane.add(label, LAYER_1, DEPTH); 
 	
-		// Display the room temperature digits on layer one.
-		digitTemp3 = new JLabel();
-		icon = new ImageIcon(graphicsPath + "digitLarge_8.png");
-		digitTemp3.setIcon(icon);
-		digitTemp3.setBounds(64, 90, icon.getIconWidth(), icon.getIconHeight());
-		layeredPane.add(digitTemp3, LAYER_1, DEPTH); 
-		
-		digitTemp2 = new JLabel();
-		digitTemp2.setIcon(icon);
-		digitTemp2.setBounds(108, 90, icon.getIconWidth(), icon.getIconHeight());
-		layeredPane.add(digitTemp2, LAYER_1, DEPTH); 
-		
-		digitTemp1 = new JLabel();
-		digitTemp1.setIcon(icon);
-		digitTemp1.setBounds(152, 90, icon.getIconWidth(), icon.getIconHeight());
-		layeredPane.add(digitTemp1, LAYER_1, DEPTH); 
-		
-		// The room set temperature digits are made from the same images as the
-		// room temperature ones but they are scaled dynamically.
-		final int HORIZONTAL_SCALE = 25;  // 25% of the original size
-		final int VERTICAL_SCALE = 45;    // 45% of the original size. RA_BRD can we scale using the 
-		                                  // images Aspect ratio?
-		
-		// Create a digit image and reuse it for all three digits in the set LED display. Note the
-		// way the image is scaled using getScaledInstance().
-		ImageIcon imageIcon = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_8.png").getImage().getScaledInstance(HORIZONTAL_SCALE,
-				                                          VERTICAL_SCALE, Image.SCALE_DEFAULT)); 
-		digitSet3 = new JLabel();
-		digitSet3.setIcon(imageIcon);
-		digitSet3.setBounds(205, 90, imageIcon.getIconWidth(), imageIcon.getIconHeight());
-		layeredPane.add(digitSet3, LAYER_1, DEPTH); showSetTemperature(1, Zone1setTemperature);
-	
-		digitSet2 = new JLabel();
-		digitSet2.setIcon(imageIcon);
-		digitSet2.setBounds(235, 90, imageIcon.getIconWidth(), imageIcon.getIconHeight());
-		layeredPane.add(digitSet2, LAYER_1, DEPTH); showSetTemperature(1, Zone1setTemperature);
-		
-		digitSet1 = new JLabel();
-		digitSet1.setIcon(imageIcon);
-		digitSet1.setBounds(265, 90, imageIcon.getIconWidth(), imageIcon.getIconHeight());
-		layeredPane.add(digitSet1, LAYER_1, DEPTH); 
+		// Display the three room temperature digits on layer one.
+		roomDisplay = new LedDisplay(largeDigits, 3, ROOM_DIGIT_PITCH);
+		roomDisplay.setLocation(64, 90);
+		layeredPane.add(roomDisplay, LAYER_1, DEPTH); 
+		
+		// The room set temperature digits are the same glyphs scaled down to
+		// the size of the set LED display.
+		setDisplay = new LedDisplay(smallDigits, 3, SET_DIGIT_PITCH);
+		setDisplay.setLocation(205, 90);
+		layeredPane.add(setDisplay, LAYER_1, DEPTH); 
+		showSetTemperature(Environment.ZONE1, Zone1setTemperature);
 		
 		// Interactive set temperature switches implemented as JButton components.
 		icon = new ImageIcon(graphicsPath + "cmdSetUp.png");
@@ -347,24 +346,24 @@ public class HMIui extends JFrame{
 		//
 		// cmdSetUp_Click()
 		// ================
-		// See also the companion function cmdUpClicked() 
+		// See also the companion function buttonEvents() 
 		//
 		cmdSetUp.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				cmdSetUpCounter++;
+				buttonEvents.add(ButtonEvent.SET_UP);
 			}
 		});
 		
 		//
 		// cmdSetDown_Click()
 		// ==================
-		// See also the companion function cmdDownClicked() 
+		// See also the companion function buttonEvents() 
 		// 
 		cmdSetDown.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
-				cmdSetDownCounter++;
+				buttonEvents.add(ButtonEvent.SET_DOWN);
 			}
 		});
 	}
@@ -380,30 +379,30 @@ public class HMIui extends JFrame{
 	//
 	
 	//
-	// cmdUpClicked()
+	// buttonEvents()
 	// ==============
-	// Refer to the companion function cmdSetUp_Click() in defineHMIEvents() 
+	// Refer to the companion functions cmdSetUp_Click() and cmdSetDown_Click()
+	// in defineHMIEvents()
 	//
-	public boolean cmdUpClicked() {
-		if (cmdSetUpCounter > 0) {
-			cmdSetUpCounter = Math.max(--cmdSetUpCounter, 0);
-			return true;
-		} else {
-			return false;
-		}
+	@Override
+	public ButtonEventQueue buttonEvents() {
+		return buttonEvents;
 	}
 	
 	//
-	// cmdDownClicked()
-	// ================
-	// Refer to the companion function cmdSetDown_Click() in defineHMIEvents()
-	// 
-	public boolean cmdDownClicked() {
-		if (cmdSetDownCounter > 0) {
-			cmdSetDownCounter = Math.max(--cmdSetDownCounter, 0);
-			return true;
-		} else {
-			return false;
+	// showZoneTemperature()
+	// =====================
+	// Displays the modelled temperature of the zone, to two decimal places.
+	//
+	// zone                Index of the zone, from 0. Only Environment.ZONE1
+	//					   is shown.
+	//
+	// temperature         Temperature in centi-degrees.
+	//
+	@Override
+	public void showZoneTemperature(int zone, int temperature) {
+		if (zone == Environment.ZONE1) {
+			labelZone3.setText(Temperature.toString(temperature) + "\u00B0");
 		}
 	}
 	
@@ -412,45 +411,18 @@ public class HMIui extends JFrame{
 	// =====================
 	// Displays a temperature on a three-digit LED panel. 
 	//
-	// zone                Zone the temperature applies to.
+	// zone                Index of the zone, from 0. Only Environment.ZONE1
+	//					   is shown.
 	//
 	// displayTemperature. Temperature to display. Note that the room temperature 
 	//					   is stored in the environment as a float but the display 
 	//					   can only show whole numbers.
 	//
+	@Override
 	public void showRoomTemperature(int zone, int displayTemperature) {
-		int absTemperature = Math.abs(displayTemperature);
-		String temperature = "000" + Integer.toString(absTemperature);
-		temperature = temperature.substring(temperature.length() - 3);
-		
-		Icon icon = new ImageIcon();
-		Icon iconBlank = new ImageIcon(graphicsPath + "digitLarge_Blank.png");
-		Icon iconMinus = new ImageIcon(graphicsPath + "digitLarge_Minus.png");
-		
-		icon = new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(2, 3) + ".png");
-		digitTemp1.setIcon(icon);
-		
-		if (absTemperature < 10) {
-			if (displayTemperature < 0) {
-				digitTemp2.setIcon(iconMinus);
-			} else {
-				digitTemp2.setIcon(iconBlank);
-			}
-		} else {
-			icon = new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(1, 2) + ".png");
-			digitTemp2.setIcon(icon);
-		}	
-		
-		if (absTemperature < 100) {
-			if ((displayTemperature < 0) && (absTemperature > 9)) {
-				digitTemp3.setIcon(iconMinus);
-			} else {
-				digitTemp3.setIcon(iconBlank);
-			}
-		} else {
-			icon = new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(0, 1) + ".png");
-			digitTemp3.setIcon(icon);
-		}	
+		if (zone == Environment.ZONE1) {
+			roomDisplay.value(displayTemperature);
+		}
 	}
 	
 	//
@@ -458,55 +430,18 @@ public class HMIui extends JFrame{
 	// ====================
 	// Displays the preset zone temperature on the small three-digit LED panel
 	//
-	// zone                Zone the temperature applies to.
+	// zone                Index of the zone, from 0. Only Environment.ZONE1
+	//					   is shown.
 	//
 	// displayTemperature. Set temperature to display. Note that the set temperature 
 	//					   is stored in the environment as a float but the display 
 	//					   can only show whole numbers.
 	//
+	@Override
 	public void showSetTemperature(int zone, int displayTemperature) {
-		// The room set temperature digits are made from the same images as the
-		// room temperature ones but they are scaled dynamically.
-		final int HORIZONTAL_SCALE = 25;
-		final int VERTICAL_SCALE = 45;
-		
-		int absTemperature = Math.abs(displayTemperature);
-		String temperature = "000" + Integer.toString(absTemperature);
-		temperature = temperature.substring(temperature.length() - 3);
-		
-		ImageIcon icon = new ImageIcon();
-		Icon iconBlank = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_Blank.png")
-				                       .getImage().getScaledInstance(HORIZONTAL_SCALE, VERTICAL_SCALE, Image.SCALE_DEFAULT)); 
-		Icon iconMinus = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_Minus.png")
-				                       .getImage().getScaledInstance(HORIZONTAL_SCALE, VERTICAL_SCALE, Image.SCALE_DEFAULT));
-		
-		icon = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(2, 3) + ".png")
-				             .getImage().getScaledInstance(HORIZONTAL_SCALE, VERTICAL_SCALE, Image.SCALE_DEFAULT)); 
-		digitSet1.setIcon(icon);
-		
-		if (absTemperature < 10) {
-			if (displayTemperature < 0) {
-				digitSet2.setIcon(iconMinus);
-			} else {
-				digitSet2.setIcon(iconBlank);
-			}
-		} else {
-			icon = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(1, 2) + ".png")
-					                           .getImage().getScaledInstance(HORIZONTAL_SCALE, VERTICAL_SCALE, Image.SCALE_DEFAULT)); 
-			digitSet2.setIcon(icon);
-		}	
-		
-		if (absTemperature < 100) {
-			if ((displayTemperature < 0) && (absTemperature > 9)) {
-				digitSet3.setIcon(iconMinus);
-			} else {
-				digitSet3.setIcon(iconBlank);
-			}
-		} else {
-			icon = new ImageIcon(new ImageIcon(graphicsPath + "digitLarge_" + temperature.substring(0, 1) + ".png")
-					                           .getImage().getScaledInstance(HORIZONTAL_SCALE, VERTICAL_SCALE, Image.SCALE_DEFAULT)); 
-			digitSet3.setIcon(icon);
-		}	
+		if (zone == Environment.ZONE1) {
+			setDisplay.value(displayTemperature);
+		}
 	}
 	
 
@@ -15,37 +15,123 @@
 // protocol allows function block applications to exchange information with the
 // simulation and interact with it.
 //
+// Command line options
+// ====================
+//   -speed <n>			Runs the simulation n times faster than real time,
+//						for example -speed 10. The default is 1.
+//
+//   -speed max			Runs the simulation as fast as the model can be
+//						calculated, without waiting between ticks.
+//
+//   -lockstep			Advances the simulation one tick at a time once every
+//						client taking part has acknowledged the previous tick
+//						with the STP command.
+//
+//   -tick <ms>			Simulated time between updates of the environment,
+//						in milliseconds. The default is 2000.
+//
+//   -seed <n>			Seed for the random numbers used by the model, to
+//						reproduce an earlier run. Each run logs its seed when
+//						it starts. The default is a new seed for every run.
+//						With several buildings, building i is given seed
+//						n + i.
+//
+//   -buildings <n>		Number of buildings to simulate, for example
+//						-buildings 10. The buildings share the clock, the
+//						tick thread and the server, and building i listens
+//						on port 62501 + i. Only the first building has an
+//						HMI. The default is 1.
+//
+//   -reactors <n>		Number of reactor threads that serve the client
+//						connections, for example one per core. The default
+//						is 0, which serves every connection on the server
+//						thread.
+//
+//   -headless			Runs the simulation and the server without the HMI,
+//						on a machine with no display. AWT and Swing are not
+//						started at all.
+//
+//   -workers <n>		Number of worker threads that handle the commands
+//						sent by the clients, for example one per core. The
+//						default is 0, which handles each command on the
+//						thread that read it.
+//
 // Revision History
 // ================
 // 18.12.2019 BRD Original version
 // 19.01.2020 BRD Linked in new non-blocking network libraries.
 // 13.01.2020 BRD Crafted the new Environment section of the simulation.
+// 17.10.2026 Added the -workers command line option, which handles the
+//            commands on NIOserver worker threads so that updates to the
+//            HMI do not hold up the network traffic.
+// 17.10.2026 Added the -speed and -tick command line options.
+// 17.10.2026 Added the -lockstep command line option.
+// 17.10.2026 Added the -seed command line option.
+// 17.10.2026 Added the -buildings command line option.
+// 17.10.2026 Added the -headless command line option.
+// 17.10.2026 The HMI is now updated through a ViewUpdater on the event
+//            dispatch thread.
+// 17.10.2026 Added the -reactors command line option.
 // 
 package HVACsim;
 
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.SwingUtilities;
 
 public class HVACsim {
 	public static String appVersion = "1.1";
 	private static boolean isSilent = true;
 	
+	// Number of server worker threads from the command line. Zero handles
+	// each command on the thread that read it.
+	private static int workerCount = 0;
+	
+	// Clock settings from the command line. A speed of 0 means free running.
+	private static double clockSpeed = 1.0;
+	private static boolean lockstep = false;
+	
+	// Seed for the run from the command line, if one was given.
+	private static Long seed = null;
+	private static long tickPeriod = SimulationClock.DEFAULT_TICK_PERIOD;
+	
+	// Number of buildings to simulate, each on its own listener port.
+	private static int buildingCount = 1;
+	
+	// Number of server reactor threads. Zero uses the server thread.
+	private static int reactorCount = 0;
+	
+	// True to run without the HMI.
+	private static boolean headless = false;
+	
+	// RA_BRD parameterise these properly from a configuration file.
+	private static final String HOST_NAME = "127.0.0.1";
+	private static final int LISTENER_PORT = 62501;
+	
 	//
 	// main()
 	// ======
 	public static void main(String[] args) {
 		say("HVAC Simulator version " + appVersion + "\n");
-		SwingUtilities.invokeLater(new Runnable() {
-			public void run() {
-				createSimulation();
-			}
-		});
+		if (!parseArguments(args)) {
+			System.err.println("Usage: HVACsim [-speed <n>|max | -lockstep] [-tick <ms>] [-seed <n>] [-buildings <n>] [-reactors <n>] [-headless] [-workers <n>]");
+			System.exit(1);
+		}
+		if (headless) {
+			System.setProperty("java.awt.headless", "true");
+			createSimulation(null);
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					createSimulation(new ViewUpdater(createHMI()));
+				}
+			});
+		}
 	}
 	
 	//
-	// createSimulation()
-	// ==================	
-	private static void createSimulation() {
-		say("HVAC Simulator version " + appVersion + "\n");
+	// createHMI()
+	// ===========
+	private static HMIui createHMI() {
 		//
 		// RA_BRD parameters are windowTop, windowLeft, windowWidth, windowHeight. 
 		//        Are these in the right (i.e. standard) order for the documented
@@ -53,22 +139,129 @@ public class HVACsim {
 		//        inconsistently. Also, fix up magic numbers and since the HMI 
 		//		  automatically resized the window to fit the contents, do we need
 		//        the window height and width parameters?
-		HMIui ui = new HMIui("simbIoTe HVAC Room Simulator", 0, 2000, 800, 500); //0, 2000, 800, 500
+		return new HMIui("simbIoTe HVAC Room Simulator", 0, 2000, 800, 500); //0, 2000, 800, 500
+	}
+	
+	//
+	// createSimulation()
+	// ==================	
+	// Creates the buildings and starts the simulation and the server. The
+	// first building is shown on view, or runs headless if view is null.
+	//
+	private static void createSimulation(EnvironmentView view) {
+		say("HVAC Simulator version " + appVersion + "\n");
 		
-		Environment envr = new Environment(ui);
-		new Thread(envr).start();
+		// All the buildings are advanced by one scheduler on the same clock,
+		// and their thermal solvers share one pool of threads.
+		SimulationClock clock = new SimulationClock();
+		TickScheduler scheduler = new TickScheduler(clock);
+		ForkJoinPool pool = ThermalSolver.newPool(Runtime.getRuntime().availableProcessors());
+		Environment[] buildings = new Environment[buildingCount];
 		
-		// RA_BRD parameterise these properly from a configuration file.
-		startServer("127.0.0.1", 62501, envr);
+		configureClock(clock);
+		for (int i = 0; i < buildingCount; i++) {
+			buildings[i] = new Environment((i == 0) ? view : null, clock, pool);
+			if (seed != null) {
+				buildings[i].seed(seed + i);
+			}
+			buildings[i].attach(scheduler);
+		}
+		new Thread(scheduler, "TickScheduler").start();
+		
+		startServer(HOST_NAME, LISTENER_PORT, buildings);
 	}	
 	
+	//
+	// parseArguments()
+	// ================
+	// Reads the command line options.
+	//
+	// returns			False if an option is not recognised or its value is
+	//					invalid.
+	//
+	private static boolean parseArguments(String[] args) {
+		int i = 0;
+		
+		try {
+			while (i < args.length) {
+				if (args[i].equals("-speed") && (i + 1 < args.length)) {
+					clockSpeed = args[i + 1].equals("max") ? 0 : Double.parseDouble(args[i + 1]);
+					if (clockSpeed < 0) {
+						return false;
+					}
+					i += 2;
+				} else if (args[i].equals("-headless")) {
+					headless = true;
+					i++;
+				} else if (args[i].equals("-lockstep")) {
+					lockstep = true;
+					i++;
+				} else if (args[i].equals("-seed") && (i + 1 < args.length)) {
+					seed = Long.parseLong(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-buildings") && (i + 1 < args.length)) {
+					buildingCount = Integer.parseInt(args[i + 1]);
+					if (buildingCount <= 0) {
+						return false;
+					}
+					i += 2;
+				} else if (args[i].equals("-reactors") && (i + 1 < args.length)) {
+					reactorCount = Integer.parseInt(args[i + 1]);
+					if (reactorCount < 0) {
+						return false;
+					}
+					i += 2;
+				} else if (args[i].equals("-tick") && (i + 1 < args.length)) {
+					tickPeriod = Long.parseLong(args[i + 1]);
+					if (tickPeriod <= 0) {
+						return false;
+					}
+					i += 2;
+				} else if (args[i].equals("-workers") && (i + 1 < args.length)) {
+					workerCount = Integer.parseInt(args[i + 1]);
+					if (workerCount < 0) {
+						return false;
+					}
+					i += 2;
+				} else {
+					return false;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+	
+	//
+	// configureClock()
+	// ================
+	// Applies the clock settings from the command line.
+	//
+	private static void configureClock(SimulationClock clock) {
+		clock.tickPeriod(tickPeriod);
+		if (lockstep) {
+			clock.lockstep();
+		} else if (clockSpeed == 0) {
+			clock.freeRunning();
+		} else if (clockSpeed != 1.0) {
+			clock.scaled(clockSpeed);
+		}
+	}
+	
 	//
 	// startServer()
 	// =============
-	// Creates and starts the non-blocking TCP/IP server.
+	// Creates and starts the non-blocking TCP/IP server, with a listener
+	// port for each building starting at listenerPort.
 	//
-	private static void startServer(String hostName, int listenerPort, Environment envr) {
-		NIOserver server = new NIOserver(hostName, listenerPort, envr);
+	private static void startServer(String hostName, int listenerPort, Environment[] buildings) {
+		NIOserver server = new NIOserver(hostName, listenerPort, buildings[0]);
+		for (int i = 1; i < buildings.length; i++) {
+			server.addListener(listenerPort + i, buildings[i]);
+		}
+		server.reactorCount(reactorCount);
+		server.workerCount(workerCount);
 		new Thread(server).start();
 		// RA_BRD make sure the server starts properly and returns back a status.
 	}
@@ -0,0 +1,91 @@
+//
+// HEADLESS VIEW
+// =============
+// An EnvironmentView for running the simulator without a display.
+//
+// Documentation
+// =============
+// Nothing is drawn. The view only counts the updates it is given, and keeps
+// the last temperature shown for zone 1, so that a run without an HMI can
+// still be checked. There are no buttons to press, so its button event
+// queue stays empty and the set temperature can only be changed by the
+// clients.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Replaced the button methods with an empty event queue.
+//
+package HVACsim;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class HeadlessView implements EnvironmentView {
+	private final AtomicLong zoneUpdates = new AtomicLong();
+	private final AtomicLong roomUpdates = new AtomicLong();
+	private final AtomicLong setUpdates = new AtomicLong();
+	private volatile int zoneTemperature = 0;
+	private final ButtonEventQueue buttonEvents = new ButtonEventQueue(1);
+
+	@Override
+	public ButtonEventQueue buttonEvents() {
+		return buttonEvents;
+	}
+
+	@Override
+	public void showZoneTemperature(int zone, int temperature) {
+		if (zone == Environment.ZONE1) {
+			zoneTemperature = temperature;
+		}
+		zoneUpdates.incrementAndGet();
+	}
+
+	@Override
+	public void showRoomTemperature(int zone, int displayTemperature) {
+		roomUpdates.incrementAndGet();
+	}
+
+	@Override
+	public void showSetTemperature(int zone, int displayTemperature) {
+		setUpdates.incrementAndGet();
+	}
+
+	//
+	// get zoneUpdates()
+	// =================
+	public long zoneUpdates() {
+		return zoneUpdates.get();
+	}
+
+	//
+	// get roomUpdates()
+	// =================
+	public long roomUpdates() {
+		return roomUpdates.get();
+	}
+
+	//
+	// get setUpdates()
+	// ================
+	public long setUpdates() {
+		return setUpdates.get();
+	}
+
+	//
+	// get zoneTemperature()
+	// =====================
+	// Returns the last temperature shown for zone 1, in centi-degrees.
+	//
+	public int zoneTemperature() {
+		return this.zoneTemperature;
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "HeadlessView zone=" + zoneUpdates() + " room=" + roomUpdates() + " set=" + setUpdates() +
+			   " zone1=" + Temperature.toString(zoneTemperature);
+	}
+}
@@ -0,0 +1,125 @@
+//
+// LED DISPLAY
+// ===========
+// A lightweight Swing component that shows a whole number on an LED panel of
+// any number of digits.
+//
+// Documentation
+// =============
+// The panel paints its digits itself in paintComponent(), copying each one
+// from the sprite sheet of a DigitGlyphs set, rather than being built from a
+// JLabel per digit. Showing a new value works out the glyph for each digit
+// and only asks Swing to repaint the digits whose glyph has changed, so when
+// a temperature moves by a degree usually only the units digit is repainted.
+// Nothing is laid out again, since the panel never changes size.
+//
+// Numbers are shown right-aligned, with the leading zeros blanked and a minus
+// sign in front of the first digit of a negative number if there is room for
+// it. A number with more digits than the panel only has its lowest digits
+// shown.
+//
+// Like any other Swing component, the panel must only be changed on the event
+// dispatch thread. See ViewUpdater.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import javax.swing.JComponent;
+
+public class LedDisplay extends JComponent {
+	private static final long serialVersionUID = 1L;
+
+	private final DigitGlyphs glyphs;
+	private final int pitch;
+
+	// The glyph shown in each digit, from left to right.
+	private final int[] shown;
+
+	// Scratch space for working out the new glyphs.
+	private final int[] next;
+
+	//
+	// LedDisplay()
+	// ============
+	// Creates a panel with every segment of every digit lit, showing 8s.
+	//
+	// glyphs			The glyphs of the panel's digit size.
+	//
+	// digitCount		Number of digits on the panel.
+	//
+	// pitch			Distance in pixels from the left edge of one digit to
+	//					the left edge of the next.
+	//
+	public LedDisplay(DigitGlyphs glyphs, int digitCount, int pitch) {
+		this.glyphs = glyphs;
+		this.pitch = pitch;
+		this.shown = new int[Math.max(1, digitCount)];
+		this.next = new int[this.shown.length];
+		for (int digit = 0; digit < shown.length; digit++) {
+			shown[digit] = 8;
+		}
+		setOpaque(false);
+		setSize(getPreferredSize());
+	}
+
+	//
+	// value()
+	// =======
+	// Shows a number, repainting only the digits that change.
+	//
+	public void value(int number) {
+		int magnitude = Math.abs(number);
+		int digit = shown.length - 1;
+
+		// Fill in the digits from the right, then the minus sign and blanks.
+		do {
+			next[digit--] = magnitude % 10;
+			magnitude = magnitude / 10;
+		} while ((magnitude > 0) && (digit >= 0));
+		if ((number < 0) && (digit >= 0)) {
+			next[digit--] = DigitGlyphs.MINUS;
+		}
+		while (digit >= 0) {
+			next[digit--] = DigitGlyphs.BLANK;
+		}
+
+		for (digit = 0; digit < shown.length; digit++) {
+			if (next[digit] != shown[digit]) {
+				shown[digit] = next[digit];
+				repaint(digit * pitch, 0, glyphs.width(), glyphs.height());
+			}
+		}
+	}
+
+	//
+	// paintComponent()
+	// ================
+	// Paints the digits that fall within the area being repainted.
+	//
+	@Override
+	protected void paintComponent(Graphics graphics) {
+		Rectangle clip = graphics.getClipBounds();
+		int x;
+
+		for (int digit = 0; digit < shown.length; digit++) {
+			x = digit * pitch;
+			if ((clip == null) || ((x < clip.x + clip.width) && (x + glyphs.width() > clip.x))) {
+				glyphs.paint(graphics, shown[digit], x, 0);
+			}
+		}
+	}
+
+	//
+	// getPreferredSize()
+	// ==================
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(((shown.length - 1) * pitch) + glyphs.width(), glyphs.height());
+	}
+}
@@ -0,0 +1,170 @@
+//
+// LOCKSTEP BARRIER
+// ================
+// Holds the simulation at each tick until every client taking part in a
+// lockstep co-simulation has acknowledged it.
+//
+// Documentation
+// =============
+// When the SimulationClock is in lockstep mode, the TickScheduler waits on
+// this barrier before each tick instead of waiting for a deadline. The tick
+// runs as soon as every participant has acknowledged the previous tick, and
+// the participants are then told that the new tick has been calculated. The
+// simulation therefore runs as fast as the slowest participant allows, and
+// the clients always see the same sequence of ticks.
+//
+// Participants can join and leave at any time:
+//
+//   - A client that joins counts as having acknowledged the tick in progress,
+//     so it never holds up a tick it has not seen. It takes part from the next
+//     tick onwards.
+//
+//   - A client that leaves, or disconnects, is removed from the tick in
+//     progress, which is released if it was only waiting for that client.
+//
+// While there are no participants the barrier stays closed, so the simulation
+// does not run ahead before the first client has joined.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+public class LockstepBarrier {
+	//
+	// Participant
+	// ===========
+	// Told when each tick it takes part in has been calculated.
+	//
+	public interface Participant {
+		void stepped(long tickNumber);
+	}
+
+	private final LinkedHashMap<Object, Participant> participants = new LinkedHashMap<Object, Participant>();
+
+	// Participants that have not yet acknowledged the current tick.
+	private final HashSet<Object> waiting = new HashSet<Object>();
+
+	// Number of the last tick that was calculated.
+	private long tickNumber = 0;
+
+	// Set by wakeUp() to release a scheduler waiting on the barrier.
+	private boolean wokenUp = false;
+
+	//
+	// join()
+	// ======
+	// Adds a participant, which takes part from the next tick.
+	//
+	// key				Identifies the participant, such as the client's
+	//					NIOresponse.
+	//
+	// returns			False if the participant had already joined.
+	//
+	public synchronized boolean join(Object key, Participant participant) {
+		if (participants.containsKey(key)) {
+			return false;
+		}
+		participants.put(key, participant);
+		notifyAll();
+		return true;
+	}
+
+	//
+	// leave()
+	// =======
+	// Removes a participant. Does nothing if it has not joined.
+	//
+	public synchronized void leave(Object key) {
+		if (participants.remove(key) != null) {
+			waiting.remove(key);
+			notifyAll();
+		}
+	}
+
+	//
+	// acknowledge()
+	// =============
+	// Records that a participant has finished with a tick.
+	//
+	// returns			False if the participant has not joined or the tick
+	//					is not the current one.
+	//
+	public synchronized boolean acknowledge(Object key, long tickNumber) {
+		if (!participants.containsKey(key) || (tickNumber != this.tickNumber)) {
+			return false;
+		}
+		if (waiting.remove(key) && waiting.isEmpty()) {
+			notifyAll();
+		}
+		return true;
+	}
+
+	//
+	// awaitStep()
+	// ===========
+	// Waits until there is at least one participant and all of them have
+	// acknowledged the current tick.
+	//
+	// returns			False if the wait was ended by wakeUp() instead.
+	//
+	public synchronized boolean awaitStep() throws InterruptedException {
+		while (participants.isEmpty() || !waiting.isEmpty()) {
+			if (wokenUp) {
+				wokenUp = false;
+				return false;
+			}
+			wait();
+		}
+		return true;
+	}
+
+	//
+	// completeStep()
+	// ==============
+	// Called by the scheduler once a tick has been calculated. Tells every
+	// participant and waits for them all to acknowledge it.
+	//
+	public void completeStep(long tickNumber) {
+		ArrayList<Participant> stepped;
+
+		synchronized (this) {
+			this.tickNumber = tickNumber;
+			waiting.addAll(participants.keySet());
+			stepped = new ArrayList<Participant>(participants.values());
+		}
+		for (Participant participant : stepped) {
+			participant.stepped(tickNumber);
+		}
+	}
+
+	//
+	// wakeUp()
+	// ========
+	// Releases a scheduler waiting in awaitStep() so that it can stop. If
+	// the scheduler is not waiting, its next call returns straight away.
+	//
+	public synchronized void wakeUp() {
+		wokenUp = true;
+		notifyAll();
+	}
+
+	//
+	// get tickNumber()
+	// ================
+	public synchronized long tickNumber() {
+		return this.tickNumber;
+	}
+
+	//
+	// get participantCount()
+	// ======================
+	public synchronized int participantCount() {
+		return participants.size();
+	}
+}
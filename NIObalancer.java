@@ -0,0 +1,65 @@
+//
+// NON-BLOCKING SERVER LOAD BALANCER
+// =================================
+// Chooses which reactor a newly accepted session socket is handed to when the
+// NIOserver runs in multi-reactor mode.
+//
+// Documentation
+// =============
+// Two strategies are provided:
+//
+//   RoundRobin			Hands connections to each reactor in turn. Cheap and
+//						fair when all clients generate similar traffic.
+//
+//   LeastConnections	Hands each connection to the reactor currently serving
+//						the fewest sessions. Better when clients connect and
+//						disconnect unevenly.
+//
+// Other strategies can be plugged in by implementing this interface and
+// passing the instance to NIOserver.balancer() before the server is started.
+// select() is only ever called from the acceptor thread.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+public interface NIObalancer {
+	//
+	// select()
+	// ========
+	// reactors			The reactors that the server is running. Never empty.
+	//
+	// returns			The reactor that should serve the next connection.
+	//
+	NIOreactor select(NIOreactor[] reactors);
+
+	//
+	// RoundRobin
+	// ==========
+	public static class RoundRobin implements NIObalancer {
+		private int next = 0;
+
+		public NIOreactor select(NIOreactor[] reactors) {
+			NIOreactor reactor = reactors[next % reactors.length];
+			next = (next + 1) % reactors.length;
+			return reactor;
+		}
+	}
+
+	//
+	// LeastConnections
+	// ================
+	public static class LeastConnections implements NIObalancer {
+		public NIOreactor select(NIOreactor[] reactors) {
+			NIOreactor least = reactors[0];
+			for (NIOreactor reactor : reactors) {
+				if (reactor.connectionCount() < least.connectionCount()) {
+					least = reactor;
+				}
+			}
+			return least;
+		}
+	}
+}
@@ -0,0 +1,216 @@
+//
+// NON-BLOCKING SERVER BUFFER POOL
+// ===============================
+// A pool of direct byte buffers that the server leases for socket reads.
+//
+// Documentation
+// =============
+// Reading from a SocketChannel into a heap ByteBuffer makes the JDK copy the
+// data through a temporary direct buffer first. Allocating a fresh buffer for
+// every read also produces a steady stream of garbage. The pool keeps direct
+// buffers in a small number of size classes and hands them out on request.
+// A buffer is returned to the free list of its size class when it is released
+// and is then reused by the next lease.
+//
+// The total amount of direct memory the pool will allocate is capped. Once the
+// cap is reached, a lease is satisfied from a larger free buffer if there is
+// one, and otherwise from a plain heap buffer that is simply dropped when it
+// is released. This keeps the direct memory footprint bounded however many
+// FORTE devices are connected at once.
+//
+// A pool is not thread-safe. Each NIOreactor owns its own pool and is the
+// only thread that leases from it or releases to it, so reads on different
+// reactors never contend for a lock. The counters may be read from another
+// thread for monitoring, in which case they are only approximate.
+//
+// The hit, miss and overflow counters describe how well the pool is sized:
+//
+//   hits				Leases satisfied from a free buffer.
+//   misses				Leases that had to allocate a new direct buffer.
+//   overflows			Leases that fell back to a heap buffer because the
+//						cap had been reached.
+//
+// A reader that does not know how much data is waiting can start with the
+// smallest class and step through the others with largerSize() and
+// smallerSize() as its reads fill, or fail to fill, the buffers it leases.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added largerSize() and smallerSize() so that readers can move
+//            between the size classes.
+// 17.10.2026 Removed the lock. Each reactor now has a pool of its own.
+//
+package HVACsim;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class NIObufferPool {
+	private final int[] sizeClasses;
+	private final List<ArrayDeque<ByteBuffer>> freeBuffers = new ArrayList<>();
+	private final long maxPoolBytes;
+	private long allocatedBytes = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long overflows = 0;
+
+	//
+	// NIObufferPool()
+	// ===============
+	// sizeClasses		Capacities of the buffers that the pool manages. A
+	//					lease is served by the smallest class that is large
+	//					enough.
+	//
+	// maxPoolBytes		Upper limit on the total capacity of the direct
+	//					buffers that the pool will allocate.
+	//
+	public NIObufferPool(int[] sizeClasses, long maxPoolBytes) {
+		if (sizeClasses.length == 0) {
+			throw new IllegalArgumentException("At least one buffer size class is required");
+		}
+		this.sizeClasses = sizeClasses.clone();
+		Arrays.sort(this.sizeClasses);
+		this.maxPoolBytes = maxPoolBytes;
+		for (int i = 0; i < this.sizeClasses.length; i++) {
+			freeBuffers.add(new ArrayDeque<ByteBuffer>());
+		}
+	}
+
+	//
+	// lease()
+	// =======
+	// Returns a cleared buffer with at least the requested capacity. The
+	// buffer must be handed back with release() once it is no longer needed.
+	//
+	// minimumSize		The smallest capacity that the caller can use. This
+	//					must not be larger than the largest size class.
+	//
+	public ByteBuffer lease(int minimumSize) {
+		int sizeClass = sizeClassFor(minimumSize);
+		if (sizeClass < 0) {
+			throw new IllegalArgumentException("No buffer size class holds " + minimumSize + " bytes");
+		}
+
+		for (int i = sizeClass; i < sizeClasses.length; i++) {
+			ByteBuffer buffer = freeBuffers.get(i).pollFirst();
+			if (buffer != null) {
+				hits++;
+				buffer.clear();
+				return buffer;
+			}
+			if (allocatedBytes + sizeClasses[i] <= maxPoolBytes) {
+				// Only allocate in the requested class; a larger free buffer
+				// is only worth using once the cap has been reached.
+				break;
+			}
+		}
+
+		if (allocatedBytes + sizeClasses[sizeClass] <= maxPoolBytes) {
+			misses++;
+			allocatedBytes += sizeClasses[sizeClass];
+			return ByteBuffer.allocateDirect(sizeClasses[sizeClass]);
+		}
+		overflows++;
+		return ByteBuffer.allocate(minimumSize);
+	}
+
+	//
+	// release()
+	// =========
+	// Returns a leased buffer to the pool. Heap buffers handed out after the
+	// cap was reached are not kept.
+	//
+	public void release(ByteBuffer buffer) {
+		if (buffer.isDirect()) {
+			int sizeClass = sizeClassFor(buffer.capacity());
+			if ((sizeClass >= 0) && (sizeClasses[sizeClass] == buffer.capacity())) {
+				freeBuffers.get(sizeClass).addFirst(buffer);
+			}
+		}
+	}
+
+	//
+	// sizeClassFor()
+	// ==============
+	// Returns the index of the smallest size class that can hold the
+	// requested number of bytes, or -1 if none can.
+	//
+	private int sizeClassFor(int size) {
+		for (int i = 0; i < sizeClasses.length; i++) {
+			if (sizeClasses[i] >= size) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	//
+	// largerSize()
+	// ============
+	// Returns the size class above the one that holds the given number of
+	// bytes, or the largest size class if there is none.
+	//
+	public int largerSize(int size) {
+		int sizeClass = sizeClassFor(size);
+		if ((sizeClass < 0) || (sizeClass == sizeClasses.length - 1)) {
+			return sizeClasses[sizeClasses.length - 1];
+		}
+		return sizeClasses[sizeClass + 1];
+	}
+
+	//
+	// smallerSize()
+	// =============
+	// Returns the size class below the one that holds the given number of
+	// bytes, or the smallest size class if there is none.
+	//
+	public int smallerSize(int size) {
+		int sizeClass = sizeClassFor(size);
+		if (sizeClass < 0) {
+			return sizeClasses[sizeClasses.length - 1];
+		}
+		return sizeClasses[Math.max(sizeClass - 1, 0)];
+	}
+
+	//
+	// get hits()
+	// ==========
+	public long hits() {
+		return this.hits;
+	}
+
+	//
+	// get misses()
+	// ============
+	public long misses() {
+		return this.misses;
+	}
+
+	//
+	// get overflows()
+	// ===============
+	public long overflows() {
+		return this.overflows;
+	}
+
+	//
+	// get allocatedBytes()
+	// ====================
+	public long allocatedBytes() {
+		return this.allocatedBytes;
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "NIObufferPool hits=" + hits + " misses=" + misses + " overflows=" + overflows
+				+ " allocatedBytes=" + allocatedBytes + "/" + maxPoolBytes;
+	}
+}
@@ -0,0 +1,24 @@
+//
+// NON-BLOCKING SERVER COMMAND HANDLER
+// ===================================
+// Handles one command of a simulation. Handlers are registered against their
+// command and opcode in the simulation's NIOcommandTable.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+public interface NIOcommandHandler {
+	//
+	// handle()
+	// ========
+	// request			The packet received. It is a view that is only valid
+	//					for the duration of the call.
+	//
+	// response			Writes any response back to the client in the
+	//					protocol it negotiated.
+	//
+	void handle(NIOpacket request, NIOresponse response);
+}
@@ -0,0 +1,223 @@
+//
+// NON-BLOCKING SERVER COMMAND TABLE
+// =================================
+// Maps the command strings of a simulation to opcodes and dispatches each
+// request to the handler registered for its opcode.
+//
+// Documentation
+// =============
+// Each simulation defines its own commands, such as GZ1 or SW1, and gives
+// each one a small opcode number. Clients using the text protocol send the
+// command string and clients using the binary protocol send the opcode. The
+// session parser looks the command bytes of every text packet up in this
+// table as soon as the packet is complete, so by the time a request reaches
+// the simulation both protocols carry an opcode.
+//
+// The simulation registers an NIOcommandHandler for each opcode. Dispatch is
+// then a single array lookup rather than a switch on the command string, and
+// new commands can be added without editing a central switch. The table also
+// counts how many times each opcode has been dispatched.
+//
+// Commands must be defined when the simulation is created, before the server
+// that uses the table is started. Lookups and dispatch do not allocate or
+// lock.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added handler registration, dispatch by opcode and the
+//            per-opcode counters. Text commands are now looked up by
+//            their bytes through a hash index.
+//
+package HVACsim;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class NIOcommandTable {
+	// Largest opcode that can be defined.
+	public static final int MAX_OPCODE = 255;
+
+	// Size of the hash index from command names to opcodes. A power of two
+	// at least twice the number of opcodes so that probe chains stay short.
+	private static final int INDEX_SIZE = 512;
+
+	private final String[] names = new String[MAX_OPCODE + 1];
+	private final NIOcommandHandler[] handlers = new NIOcommandHandler[MAX_OPCODE + 1];
+
+	// Open addressing hash index holding opcode + 1 for each defined command,
+	// or 0 for an empty slot.
+	private final int[] index = new int[INDEX_SIZE];
+
+	// Number of times each opcode has been dispatched, and the number of
+	// requests for commands that are not defined.
+	private final AtomicLongArray invocations = new AtomicLongArray(MAX_OPCODE + 1);
+	private final AtomicLong unknownCommands = new AtomicLong();
+
+	//
+	// define()
+	// ========
+	// Defines a command and the opcode that represents it in the binary
+	// protocol, without a handler. Requests for it are accepted and counted
+	// but otherwise ignored.
+	//
+	public synchronized void define(String command, int opcode) {
+		if ((opcode < 0) || (opcode > MAX_OPCODE)) {
+			throw new IllegalArgumentException("Opcode " + opcode + " for command '" + command + "' is out of range");
+		}
+		if ((names[opcode] != null) && !names[opcode].equals(command)) {
+			throw new IllegalArgumentException("Opcode " + opcode + " is already defined for command '" + names[opcode] + "'");
+		}
+		int existing = opcode(command);
+		if ((existing >= 0) && (existing != opcode)) {
+			throw new IllegalArgumentException("Command '" + command + "' is already defined as opcode " + existing);
+		}
+		if (existing < 0) {
+			int slot = slotFor(command.hashCode());
+			while (index[slot] != 0) {
+				slot = (slot + 1) & (INDEX_SIZE - 1);
+			}
+			index[slot] = opcode + 1;
+		}
+		names[opcode] = command.intern();
+	}
+
+	//
+	// register()
+	// ==========
+	// Defines a command and registers the handler that is run for it.
+	//
+	public synchronized void register(String command, int opcode, NIOcommandHandler handler) {
+		define(command, opcode);
+		handlers[opcode] = handler;
+	}
+
+	//
+	// dispatch()
+	// ==========
+	// Runs the handler registered for the request's opcode. A request built
+	// from Strings rather than parsed by a session is looked up by name
+	// first.
+	//
+	// returns			False if the command is not defined.
+	//
+	public boolean dispatch(NIOpacket request, NIOresponse response) {
+		int opcode = request.opcode();
+
+		if ((opcode < 0) && !request.isBinary()) {
+			opcode = opcode(request.command());
+		}
+		if ((opcode < 0) || (opcode > MAX_OPCODE) || (names[opcode] == null)) {
+			unknownCommands.incrementAndGet();
+			return false;
+		}
+		invocations.incrementAndGet(opcode);
+		if (handlers[opcode] != null) {
+			handlers[opcode].handle(request, response);
+		}
+		return true;
+	}
+
+	//
+	// name()
+	// ======
+	// Returns the command represented by an opcode, or null if none has
+	// been defined.
+	//
+	public String name(int opcode) {
+		return ((opcode >= 0) && (opcode <= MAX_OPCODE)) ? names[opcode] : null;
+	}
+
+	//
+	// opcode()
+	// ========
+	// Returns the opcode of a command, or -1 if it has not been defined.
+	//
+	public int opcode(String command) {
+		int slot = slotFor(command.hashCode());
+		int entry;
+		while ((entry = index[slot]) != 0) {
+			if (names[entry - 1].equals(command)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & (INDEX_SIZE - 1);
+		}
+		return -1;
+	}
+
+	//
+	// opcode()
+	// ========
+	// Returns the opcode of a command held as bytes in a buffer, or -1 if
+	// it has not been defined. The hash is the same as String.hashCode()
+	// for the ASCII command names used by the packet protocol.
+	//
+	public int opcode(byte[] buffer, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = (31 * hash) + (buffer[offset + i] & 0xFF);
+		}
+
+		int slot = slotFor(hash);
+		int entry;
+		while ((entry = index[slot]) != 0) {
+			if (matches(names[entry - 1], buffer, offset, length)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & (INDEX_SIZE - 1);
+		}
+		return -1;
+	}
+
+	//
+	// get invocations()
+	// =================
+	// Returns the number of times an opcode has been dispatched.
+	//
+	public long invocations(int opcode) {
+		return invocations.get(opcode);
+	}
+
+	//
+	// get unknownCommands()
+	// =====================
+	public long unknownCommands() {
+		return unknownCommands.get();
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("NIOcommandTable");
+		for (int opcode = 0; opcode <= MAX_OPCODE; opcode++) {
+			if (names[opcode] != null) {
+				text.append(' ').append(names[opcode]).append('=').append(invocations.get(opcode));
+			}
+		}
+		return text.append(" unknown=").append(unknownCommands.get()).toString();
+	}
+
+	//
+	// slotFor()
+	// =========
+	private static int slotFor(int hash) {
+		return (hash ^ (hash >>> 16)) & (INDEX_SIZE - 1);
+	}
+
+	//
+	// matches()
+	// =========
+	private static boolean matches(String command, byte[] buffer, int offset, int length) {
+		if (command.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (command.charAt(i) != (buffer[offset + i] & 0xFF)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,152 @@
+//
+// NON-BLOCKING SERVER DISPATCHER
+// ==============================
+// Runs the Environment's external event handler on a pool of worker threads
+// so that a slow command does not hold up the reactor threads doing the I/O.
+//
+// Documentation
+// =============
+// Without a dispatcher, every packet is handled inline on the reactor thread
+// that read it. Any slow handler, such as one that updates the HMI, then
+// stalls the traffic of every other client served by the same reactor.
+//
+// With a dispatcher, the reactor copies each complete packet into the request
+// queue of its NIOsession and schedules the session. A worker then drains that
+// session's queue in order, queues each response on the session and asks the
+// reactor to flush it. A session is scheduled on at most one worker at a time,
+// so:
+//
+//   - the requests of one connection are handled, and answered, in the order
+//     they were received;
+//   - different connections are handled in parallel on different workers;
+//   - a slow request only delays the later requests of its own connection.
+//
+// A worker handles at most a quantum of requests from a session before putting
+// the session back at the end of the pool's queue. Sessions with work waiting
+// are therefore served round-robin and a chatty client cannot starve the
+// others, however many requests it has queued.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Sessions are drained round-robin, a quantum of requests at a
+//            time, so that one busy client cannot starve the others.
+// 17.10.2026 The responses from one pass are flushed together unless they
+//            exceed the flush threshold.
+// 17.10.2026 Responses are written through the session's NIOresponse.
+// 17.10.2026 Requests are handled by the Environment of their session,
+//            so that one dispatcher can serve many buildings.
+//
+package HVACsim;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NIOdispatcher {
+	// Flag to silence the status messages written to the console.
+	private static boolean isSilent = true;
+
+	private final ExecutorService workers;
+	private final int quantum;
+	private final int flushThreshold;
+
+	//
+	// NIOdispatcher()
+	// ===============
+	// Each request is handled by the external event handler of the
+	// Environment its session is connected to.
+	//
+	// workerCount		Number of worker threads.
+	//
+	// quantum			Maximum number of requests handled from one session
+	//					before moving on to the next.
+	//
+	// flushThreshold	Number of queued response bytes at which the reactor
+	//					is asked to flush before the pass has finished.
+	//
+	public NIOdispatcher(int workerCount, int quantum, int flushThreshold) {
+		this.quantum = quantum;
+		this.flushThreshold = flushThreshold;
+		this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "NIOdispatcher-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	//
+	// schedule()
+	// ==========
+	// Queues a session that has requests waiting to be drained by a worker,
+	// unless it is already queued or being drained.
+	//
+	public void schedule(final NIOsession session) {
+		if (session.scheduled.compareAndSet(false, true)) {
+			if (session.drainTask == null) {
+				session.drainTask = new Runnable() {
+					@Override
+					public void run() {
+						drain(session);
+					}
+				};
+			}
+			workers.execute(session.drainTask);
+		}
+	}
+
+	//
+	// drain()
+	// =======
+	// Handles the queued requests of one session in order, then asks its
+	// reactor to send the responses together.
+	//
+	private void drain(NIOsession session) {
+		NIOpacket request;
+		int handled = 0;
+
+		try {
+			while ((handled < quantum) && ((request = session.nextRequest()) != null)) {
+				try {
+					session.envr.externalEventHandler(request, session.response);
+					if (session.pendingBytes() >= flushThreshold) {
+						session.reactor.requestFlush(session);
+					}
+				} catch (RuntimeException e) {
+					say("NIOdispatcher exception caught while handling command '" + request.command() + "'. " + e.getMessage());
+				} finally {
+					session.removeRequest();
+					handled++;
+				}
+			}
+		} finally {
+			session.scheduled.set(false);
+			session.reactor.requestFlush(session);
+			// Requests left over after the quantum, or that arrived after the
+			// queue was found empty, put the session back at the end of the
+			// queue behind the other sessions waiting for a worker.
+			if (session.pendingRequests() > 0) {
+				schedule(session);
+			}
+		}
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private boolean variable
+	// isSilent true.
+	//
+	private static void say(String whatToSay){
+		if(!isSilent) {
+			System.err.println(whatToSay);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+//
+// NETWORK LOAD TEST
+// =================
+// A load generator for the NIOserver. It opens a number of client connections
+// that each send GZ1 requests as fast as the server answers them, and reports
+// the number of requests answered per second.
+//
+// Documentation
+// =============
+// Each client writes a batch of requests in one go and then waits for all of
+// their responses before sending the next batch, the way a pipelining FORTE
+// client would. A batch of one request is a client that waits for every
+// response before sending its next request. A response is counted when its
+// '&' terminator arrives, so the test does not depend on how wide the
+// temperature in the reply is.
+//
+// The test either loads a simulator that is already running, or starts a
+// server of its own in the same JVM with a headless building behind it. The
+// second form takes the server settings as options, so that the effect of a
+// setting can be measured by running the test twice, for example
+//
+//   java HVACsim.NIOloadTest -server -flush 1
+//   java HVACsim.NIOloadTest -server
+//
+// where a flush threshold of one byte writes every response with its own
+// write system call, and the default threshold writes the responses from each
+// read together. The numbers depend heavily on the machine, so compare runs
+// made on the same one.
+//
+// Options
+// =======
+//   -host <name>		Host to connect to. The default is 127.0.0.1.
+//
+//   -port <n>			Port to connect to. The default is 62501.
+//
+//   -clients <n>		Number of client connections. The default is 8.
+//
+//   -requests <n>		Number of requests each client sends. The default
+//						is 100000.
+//
+//   -batch <n>			Number of requests each client sends before waiting
+//						for their responses. The default is 32.
+//
+//   -server			Starts a server in this JVM instead of connecting to
+//						a running simulator.
+//
+//   -reactors <n>		With -server, the number of reactor threads.
+//
+//   -workers <n>		With -server, the number of worker threads.
+//
+//   -flush <bytes>		With -server, the flush threshold of the server.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Responses are counted by their terminators rather than assumed
+//            to be as long as the first one.
+//
+package HVACsim;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NIOloadTest {
+	// The request each client sends.
+	private static final byte[] REQUEST = "*GZ1||&".getBytes();
+
+	// Load settings from the command line.
+	private static String hostName = "127.0.0.1";
+	private static int port = 62501;
+	private static int clientCount = 8;
+	private static int requestCount = 100000;
+	private static int batchSize = 32;
+
+	// Settings for a server started by the test itself.
+	private static boolean startServer = false;
+	private static int reactorCount = 0;
+	private static int workerCount = 0;
+	private static int flushThreshold = NIOserver.FLUSH_THRESHOLD;
+
+	// Requests answered across all the clients.
+	private static final AtomicLong answered = new AtomicLong();
+
+	//
+	// main()
+	// ======
+	public static void main(String[] args) throws Exception {
+		if (!parseArguments(args)) {
+			System.err.println("Usage: NIOloadTest [-host <name>] [-port <n>] [-clients <n>] [-requests <n>] [-batch <n>]"
+					+ " [-server [-reactors <n>] [-workers <n>] [-flush <bytes>]]");
+			System.exit(1);
+		}
+		if (startServer) {
+			startServer();
+		}
+
+		Thread[] clients = new Thread[clientCount];
+		long startTime = System.nanoTime();
+		for (int i = 0; i < clientCount; i++) {
+			clients[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						runClient();
+					} catch (IOException e) {
+						System.err.println("NIOloadTest client failed. " + e.getMessage());
+					}
+				}
+			}, "NIOloadTest-" + i);
+			clients[i].start();
+		}
+		for (int i = 0; i < clientCount; i++) {
+			clients[i].join();
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+
+		System.out.println("clients=" + clientCount + " batch=" + batchSize + " requests=" + answered.get()
+				+ " seconds=" + String.format("%.2f", seconds)
+				+ " requests/s=" + String.format("%.0f", answered.get() / seconds));
+		System.exit(0);
+	}
+
+	//
+	// startServer()
+	// =============
+	// Starts a server in this JVM for the test to load, with a headless
+	// building behind it.
+	//
+	private static void startServer() throws InterruptedException {
+		NIOserver server = new NIOserver(hostName, port, new Environment(null));
+
+		server.reactorCount(reactorCount);
+		server.workerCount(workerCount);
+		server.flushThreshold(flushThreshold);
+		Thread thread = new Thread(server, "NIOserver");
+		thread.setDaemon(true);
+		thread.start();
+
+		// Give the server time to open its listener socket.
+		Thread.sleep(500);
+	}
+
+	//
+	// runClient()
+	// ===========
+	// Sends the requests of one client in batches, waiting for the responses
+	// to each batch before sending the next.
+	//
+	private static void runClient() throws IOException {
+		Socket socket = new Socket(hostName, port);
+		byte[] batch = new byte[REQUEST.length * batchSize];
+		byte[] response = new byte[64 * 1024];
+
+		for (int i = 0; i < batchSize; i++) {
+			System.arraycopy(REQUEST, 0, batch, i * REQUEST.length, REQUEST.length);
+		}
+		try {
+			socket.setTcpNoDelay(true);
+			OutputStream out = socket.getOutputStream();
+			InputStream in = socket.getInputStream();
+
+			for (int sent = 0; sent < requestCount; sent += batchSize) {
+				int requests = Math.min(batchSize, requestCount - sent);
+				int expected = requests;
+
+				out.write(batch, 0, requests * REQUEST.length);
+				while (expected > 0) {
+					int bytesRead = in.read(response);
+					if (bytesRead < 0) {
+						throw new EOFException("The server closed the connection");
+					}
+					for (int i = 0; i < bytesRead; i++) {
+						if (response[i] == (byte) '&') {
+							expected--;
+						}
+					}
+				}
+				answered.addAndGet(requests);
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	//
+	// parseArguments()
+	// ================
+	// Reads the command line options.
+	//
+	// returns			False if an option is not recognised or its value is
+	//					invalid.
+	//
+	private static boolean parseArguments(String[] args) {
+		int i = 0;
+
+		try {
+			while (i < args.length) {
+				if (args[i].equals("-server")) {
+					startServer = true;
+					i++;
+				} else if (i + 1 >= args.length) {
+					return false;
+				} else if (args[i].equals("-host")) {
+					hostName = args[i + 1];
+					i += 2;
+				} else if (args[i].equals("-port")) {
+					port = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-clients")) {
+					clientCount = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-requests")) {
+					requestCount = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-batch")) {
+					batchSize = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-reactors")) {
+					reactorCount = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-workers")) {
+					workerCount = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else if (args[i].equals("-flush")) {
+					flushThreshold = Integer.parseInt(args[i + 1]);
+					i += 2;
+				} else {
+					return false;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return (clientCount > 0) && (requestCount > 0) && (batchSize > 0) && (flushThreshold > 0);
+	}
+}
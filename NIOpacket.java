@@ -3,44 +3,404 @@
 // =================
 // (c) AUT University - 2019-2020
 //
+// Documentation
+// =============
+// A packet is a reusable view over the command and command data fields of one
+// message. The session parser points the packet at the bytes it has just
+// reassembled rather than copying them into new Strings, so a single packet
+// instance can be reused for every message that a session receives. The view
+// is only valid until the parser is asked for the next packet.
+//
+// The String accessors are still available. Command strings are interned in a
+// small shared table the first time they are seen, so command() does not
+// allocate once the simulation has received each of its commands. The command
+// data is only converted to a String when it is asked for; handlers on the hot
+// path should use the allocation-free accessors such as commandDataInt()
+// instead.
+//
+// A packet received from a client using the binary protocol has no command
+// data. Instead, isBinary() returns true and the request carries an opcode and
+// up to NIOserver.MAX_BINARY_VALUES signed 32-bit values. command() still
+// returns the name the simulation defined for the opcode.
+//
 // Revision History
 // ================
 // 18.12.2019 BRD Original version based on the Fault Diagnostic Engine (FDE)
-//				  version created on 05.07.2019	
-// 08.01.2020 BRD Refactored to bring it up-to-date for use in the HMI simulator 
+//				  version created on 05.07.2019
+// 08.01.2020 BRD Refactored to bring it up-to-date for use in the HMI simulator
 //				  system.
+// 17.10.2026 Packets are now reusable views over the bytes received so that
+//            parsing a message no longer allocates.
+// 17.10.2026 Added copyFrom() so that a packet can be queued for a worker
+//            thread after the view it was parsed into has moved on.
+// 17.10.2026 Packets can now also hold a binary protocol request: an
+//            opcode and a few fixed-width values.
+// 17.10.2026 Text packets also carry the opcode of their command once the
+//            session has looked it up.
+// 17.10.2026 Added commandDataDecimal() to read decimal values as fixed-
+//            point integers.
+// 17.10.2026 commandDataDecimal() drops the digits past the last decimal
+//            place rather than rounding, as the whole degree parsing it
+//            replaced did.
 //
 package HVACsim;
 
 public class NIOpacket {
+	// Maximum number of distinct command strings that are interned.
+	private static final int MAX_INTERNED_COMMANDS = 64;
+	private static volatile String[] internedCommands = new String[0];
+
+	private static final byte[] EMPTY = new byte[0];
+
 	private String command = "";
 	String commandData = "";
-				
+
+	private byte[] commandBuffer = EMPTY;
+	private int commandOffset = 0;
+	private int commandLength = 0;
+
+	private byte[] dataBuffer = EMPTY;
+	private int dataOffset = 0;
+	private int dataLength = 0;
+
+	// Storage owned by this packet, used by copyFrom(). It grows to fit the
+	// largest packet copied and is then reused.
+	private byte[] storage = EMPTY;
+
+	// Binary protocol request fields.
+	private boolean binary = false;
+	private int opcode = -1;
+	private final int[] values = new int[NIOserver.MAX_BINARY_VALUES];
+	private int valueCount = 0;
+
+	//
+	// view()
+	// ======
+	// Points this packet at the command and command data fields held in
+	// a buffer owned by the caller. Nothing is copied.
+	//
+	void view(byte[] buffer, int commandOffset, int commandLength, int dataOffset, int dataLength) {
+		this.commandBuffer = buffer;
+		this.commandOffset = commandOffset;
+		this.commandLength = commandLength;
+		this.dataBuffer = buffer;
+		this.dataOffset = dataOffset;
+		this.dataLength = dataLength;
+		this.command = null;
+		this.commandData = null;
+		this.binary = false;
+		this.opcode = -1;
+		this.valueCount = 0;
+	}
+
+	//
+	// resolve()
+	// =========
+	// Records the opcode of a text packet's command, and its name from the
+	// command table, once the session has looked it up.
+	//
+	void resolve(int opcode, String command) {
+		this.opcode = opcode;
+		this.command = command;
+	}
+
+	//
+	// binaryView()
+	// ============
+	// Fills this packet from the body of a binary protocol request held in
+	// a buffer owned by the caller. The values are decoded as they are
+	// copied.
+	//
+	// opcode			Opcode of the request.
+	//
+	// command			Name defined for the opcode, or null if there is none.
+	//
+	// buffer			Buffer holding the big-endian 32-bit values.
+	//
+	// offset			Position of the first value in the buffer.
+	//
+	// valueCount		Number of values. At most NIOserver.MAX_BINARY_VALUES.
+	//
+	void binaryView(int opcode, String command, byte[] buffer, int offset, int valueCount) {
+		view(EMPTY, 0, 0, 0, 0);
+		this.binary = true;
+		this.opcode = opcode;
+		this.command = (command != null) ? command : "";
+		this.commandData = "";
+		this.valueCount = valueCount;
+		for (int i = 0; i < valueCount; i++) {
+			int p = offset + (4 * i);
+			values[i] = ((buffer[p] & 0xFF) << 24) | ((buffer[p + 1] & 0xFF) << 16)
+					| ((buffer[p + 2] & 0xFF) << 8) | (buffer[p + 3] & 0xFF);
+		}
+	}
+
+	//
+	// copyFrom()
+	// ==========
+	// Copies the command and command data of another packet into storage
+	// owned by this one, so that it remains valid after the other packet's
+	// view has been reused.
+	//
+	void copyFrom(NIOpacket packet) {
+		int length = packet.commandLength + packet.dataLength;
+		if (storage.length < length) {
+			storage = new byte[length];
+		}
+		System.arraycopy(packet.commandBuffer, packet.commandOffset, storage, 0, packet.commandLength);
+		System.arraycopy(packet.dataBuffer, packet.dataOffset, storage, packet.commandLength, packet.dataLength);
+		view(storage, 0, packet.commandLength, packet.commandLength, packet.dataLength);
+		this.command = packet.command;
+		this.commandData = packet.binary ? packet.commandData : null;
+		this.binary = packet.binary;
+		this.opcode = packet.opcode;
+		this.valueCount = packet.valueCount;
+		System.arraycopy(packet.values, 0, values, 0, packet.valueCount);
+	}
+
 	//
 	// get command()
 	// =============
 	public String command() {
+		if (this.command == null) {
+			this.command = intern(commandBuffer, commandOffset, commandLength);
+		}
 		return this.command;
 	}
-		
+
 	//
 	// set command()
 	// =============
 	public void command(String command) {
 		this.command = command;
+		this.commandBuffer = command.getBytes();
+		this.commandOffset = 0;
+		this.commandLength = commandBuffer.length;
 	}
 
 	//
 	// get commandData()
 	// =================
 	public String commandData() {
+		if (this.commandData == null) {
+			this.commandData = (dataLength == 0) ? "" : new String(dataBuffer, dataOffset, dataLength);
+		}
 		return this.commandData;
 	}
-		
+
 	//
 	// set commandData()
 	// =================
 	public void commandData(String commandData) {
 		this.commandData = commandData;
+		this.dataBuffer = commandData.getBytes();
+		this.dataOffset = 0;
+		this.dataLength = dataBuffer.length;
+	}
+
+	//
+	// isBinary()
+	// ==========
+	public boolean isBinary() {
+		return this.binary;
+	}
+
+	//
+	// get opcode()
+	// ============
+	public int opcode() {
+		return this.opcode;
+	}
+
+	//
+	// get valueCount()
+	// ================
+	public int valueCount() {
+		return this.valueCount;
+	}
+
+	//
+	// get value()
+	// ===========
+	// Returns one of the values of a binary protocol request.
+	//
+	public int value(int index) {
+		if ((index < 0) || (index >= valueCount)) {
+			throw new IndexOutOfBoundsException("Packet has " + valueCount + " values");
+		}
+		return values[index];
+	}
+
+	//
+	// commandDataLength()
+	// ===================
+	public int commandDataLength() {
+		return this.dataLength;
+	}
+
+	//
+	// commandDataIndexOf()
+	// ====================
+	// Returns the position of the first occurrence of the character in
+	// the command data, or -1 if it is not present.
+	//
+	public int commandDataIndexOf(char c) {
+		for (int i = 0; i < dataLength; i++) {
+			if (dataBuffer[dataOffset + i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	//
+	// commandDataInt()
+	// ================
+	// Parses a signed decimal integer from part of the command data without
+	// converting it to a String first. Behaves like Integer.parseInt() on the
+	// same characters, including throwing NumberFormatException if they are
+	// not a valid integer.
+	//
+	// start			Position of the first character to parse.
+	//
+	// end				Position just past the last character to parse.
+	//
+	public int commandDataInt(int start, int end) {
+		long value = 0;
+		int i = start;
+		boolean negative = false;
+
+		if ((i < end) && ((dataBuffer[dataOffset + i] == '-') || (dataBuffer[dataOffset + i] == '+'))) {
+			negative = (dataBuffer[dataOffset + i] == '-');
+			i++;
+		}
+		if ((i >= end) || (end > dataLength)) {
+			throw new NumberFormatException("Invalid integer in command data");
+		}
+		for (; i < end; i++) {
+			int digit = dataBuffer[dataOffset + i] - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw new NumberFormatException("Invalid integer in command data");
+			}
+			value = (value * 10) + digit;
+			if (value > -(long) Integer.MIN_VALUE) {
+				throw new NumberFormatException("Integer out of range in command data");
+			}
+		}
+		if (negative) {
+			value = -value;
+		}
+		if (value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Integer out of range in command data");
+		}
+		return (int) value;
+	}
+
+	//
+	// commandDataDecimal()
+	// ====================
+	// Parses a signed decimal number such as "21.5" or "-3.125" from the
+	// command data as a fixed-point integer, without converting it to a
+	// String or a float. Digits past the number of decimal places are
+	// dropped, so "21.999" is returned as 2199 with 2 decimal places.
+	//
+	// decimals			Number of decimal places in the result. With 2,
+	//					"21.5" is returned as 2150.
+	//
+	// Throws NumberFormatException if the command data is not a decimal
+	// number or the result is out of range.
+	//
+	public int commandDataDecimal(int decimals) {
+		long value = 0;
+		int i = 0;
+		int places = -1;
+		int digits = 0;
+		boolean negative = false;
+
+		if ((i < dataLength) && ((dataBuffer[dataOffset + i] == '-') || (dataBuffer[dataOffset + i] == '+'))) {
+			negative = (dataBuffer[dataOffset + i] == '-');
+			i++;
+		}
+		for (; i < dataLength; i++) {
+			byte c = dataBuffer[dataOffset + i];
+			if ((c == '.') && (places < 0)) {
+				places = 0;
+				continue;
+			}
+			int digit = c - '0';
+			if ((digit < 0) || (digit > 9)) {
+				throw new NumberFormatException("Invalid decimal in command data");
+			}
+			digits++;
+			if (places < decimals) {
+				value = (value * 10) + digit;
+				if (value > -(long) Integer.MIN_VALUE) {
+					throw new NumberFormatException("Decimal out of range in command data");
+				}
+				if (places >= 0) {
+					places++;
+				}
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Invalid decimal in command data");
+		}
+		for (places = Math.max(places, 0); places < decimals; places++) {
+			value = value * 10;
+		}
+		if (negative) {
+			value = -value;
+		}
+		if ((value > Integer.MAX_VALUE) || (value < Integer.MIN_VALUE)) {
+			throw new NumberFormatException("Decimal out of range in command data");
+		}
+		return (int) value;
+	}
+
+	//
+	// intern()
+	// ========
+	// Returns the canonical String for a command. The table is copied on
+	// write so that lookups need neither locks nor allocation.
+	//
+	private static String intern(byte[] buffer, int offset, int length) {
+		String[] commands = internedCommands;
+		for (String command : commands) {
+			if (matches(command, buffer, offset, length)) {
+				return command;
+			}
+		}
+
+		String command = new String(buffer, offset, length);
+		synchronized (NIOpacket.class) {
+			commands = internedCommands;
+			for (String interned : commands) {
+				if (interned.equals(command)) {
+					return interned;
+				}
+			}
+			if (commands.length < MAX_INTERNED_COMMANDS) {
+				String[] newCommands = new String[commands.length + 1];
+				System.arraycopy(commands, 0, newCommands, 0, commands.length);
+				newCommands[commands.length] = command;
+				internedCommands = newCommands;
+			}
+		}
+		return command;
+	}
+
+	//
+	// matches()
+	// =========
+	private static boolean matches(String command, byte[] buffer, int offset, int length) {
+		if (command.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (command.charAt(i) != buffer[offset + i]) {
+				return false;
+			}
+		}
+		return true;
 	}
 }
@@ -0,0 +1,113 @@
+//
+// NON-BLOCKING SERVER PACKET QUEUE
+// ================================
+// A bounded First-In,First-Out (FIFO) queue of packets backed by a ring buffer.
+//
+// Documentation
+// =============
+// Each NIOsession holds its requests in one of these while they wait for a
+// dispatcher worker. The ring is an array of packets that are allocated once
+// when the queue is created. Adding a packet copies it into the free slot at
+// the tail, so the queue allocates nothing per packet. A full ring refuses
+// the packet, so the reactor checks isFull() and stops parsing a session's
+// data until the worker has made room, which holds the client back rather
+// than losing its requests.
+//
+// The queue has a single producer, the reactor, and a single consumer, the
+// worker draining the session. The consumer handles the packet at the head
+// with peek() and only frees the slot with remove() once it has finished with
+// it, so the producer never overwrites a packet that is still in use. The
+// indices are guarded by the queue's lock; the packet contents are not.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Removed the dropped packet count, as the reactor no longer
+//            offers a packet to a full queue.
+//
+package HVACsim;
+
+public class NIOpacketQueue {
+	private final NIOpacket[] slots;
+	private int head = 0;
+	private int size = 0;
+
+	// Statistics for this queue.
+	private int maxDepth = 0;
+
+	//
+	// NIOpacketQueue()
+	// ================
+	// capacity			The maximum number of packets the queue holds.
+	//
+	public NIOpacketQueue(int capacity) {
+		slots = new NIOpacket[capacity];
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new NIOpacket();
+		}
+	}
+
+	//
+	// offer()
+	// =======
+	// Copies a packet into the tail of the queue.
+	//
+	// returns			False if the queue was full and the packet was not
+	//					added.
+	//
+	public synchronized boolean offer(NIOpacket packet) {
+		if (size == slots.length) {
+			return false;
+		}
+		slots[(head + size) % slots.length].copyFrom(packet);
+		size++;
+		if (size > maxDepth) {
+			maxDepth = size;
+		}
+		return true;
+	}
+
+	//
+	// peek()
+	// ======
+	// Returns the packet at the head of the queue without removing it, or
+	// null if the queue is empty.
+	//
+	public synchronized NIOpacket peek() {
+		return (size == 0) ? null : slots[head];
+	}
+
+	//
+	// remove()
+	// ========
+	// Frees the slot at the head of the queue once its packet has been
+	// handled.
+	//
+	public synchronized void remove() {
+		if (size > 0) {
+			head = (head + 1) % slots.length;
+			size--;
+		}
+	}
+
+	//
+	// isFull()
+	// ========
+	public synchronized boolean isFull() {
+		return size == slots.length;
+	}
+
+	//
+	// get size()
+	// ==========
+	public synchronized int size() {
+		return this.size;
+	}
+
+	//
+	// get maxDepth()
+	// ==============
+	public synchronized int maxDepth() {
+		return this.maxDepth;
+	}
+}
@@ -0,0 +1,483 @@
+//
+// NON-BLOCKING SERVER REACTOR
+// ===========================
+// A selector thread that serves a set of client session sockets. It reads the
+// packets sent by each client, hands them to the Environment and writes the
+// responses back.
+//
+// Documentation
+// =============
+// The NIOserver can run in one of two modes:
+//
+//   Single reactor		One reactor on the server thread accepts connections
+//						on the listener sockets and serves every session.
+//						This is the original behaviour of the server.
+//
+//   Multi-reactor		The server thread only accepts connections. Each new
+//						session socket is handed to one of several reactors,
+//						each running on its own thread, as chosen by the
+//						server's NIObalancer.
+//
+// Sessions handed over from the acceptor thread are queued and registered by
+// the reactor itself after waking its selector. A SocketChannel is only ever
+// touched by the reactor that owns it. In the same way, a dispatcher worker
+// that has queued responses on a session asks the owning reactor to flush
+// them rather than writing to the socket itself.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version. Moved the selector loop out of NIOserver
+//            so that several reactors can run side by side.
+// 17.10.2026 Packets can be passed to an NIOdispatcher instead of being
+//            handled on the reactor thread.
+// 17.10.2026 Responses to the packets in one read are flushed together.
+//            Session sockets now disable Nagle's algorithm since the
+//            reactor coalesces its own writes.
+// 17.10.2026 Responses are written through the session's NIOresponse so
+//            that they match the protocol the client negotiated.
+// 17.10.2026 The Environment is told when a session closes.
+// 17.10.2026 A reactor can listen on several ports, and each session is
+//            handled by the Environment of the port it connected to.
+// 17.10.2026 The read buffer leased for a session grows through the pool's
+//            size classes while its reads fill the buffer, and shrinks back
+//            when they no longer do.
+// 17.10.2026 Each reactor now has its own buffer pool so that reads on
+//            different reactors do not contend for the pool's lock.
+// 17.10.2026 Requests are no longer dropped when a session's request queue
+//            is full. Parsing stops and resumes once a worker makes room.
+// 17.10.2026 A session with a protocol error is only closed once its
+//            rejection has been written in full.
+// 17.10.2026 Errors on a session now give the local port it connected to
+//            rather than the server's first listener port.
+// 17.10.2026 Added queueFlush() and wakeup() so that a batch of flushes
+//            from another thread wakes the reactor once.
+//
+package HVACsim;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NIOreactor implements Runnable {
+	// Flag to silence the status messages written to the console.
+	private static boolean isSilent = true;
+
+	private final NIOserver server;
+	private final Selector selector;
+
+	// Sessions accepted on another thread that are waiting to be registered
+	// with this reactor's selector.
+	private final Queue<NIOsession> newSessions = new ConcurrentLinkedQueue<>();
+
+	// Sessions with responses queued by a dispatcher worker that are waiting
+	// to be flushed by this reactor.
+	private final Queue<NIOsession> flushRequests = new ConcurrentLinkedQueue<>();
+
+	// Number of session sockets currently served by this reactor.
+	private final AtomicInteger connectionCount = new AtomicInteger();
+
+	// Pool of direct buffers that this reactor's session reads are made into.
+	// It is only used on this reactor's thread.
+	private final NIObufferPool bufferPool;
+
+	// Reused for every packet this reactor parses.
+	private final NIOpacket packet = new NIOpacket();
+
+	//
+	// NIOreactor()
+	// ============
+	// server			The server that this reactor belongs to. Its settings
+	//					are shared by all of its reactors.
+	//
+	// maxPoolBytes		Upper limit on the direct memory held by this
+	//					reactor's buffer pool.
+	//
+	public NIOreactor(NIOserver server, long maxPoolBytes) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+		this.bufferPool = new NIObufferPool(NIOserver.BUFFER_SIZE_CLASSES, maxPoolBytes);
+	}
+
+	//
+	// listen()
+	// ========
+	// Makes this reactor accept connections on a listener socket itself.
+	// This is used when the server runs in single reactor mode, and can be
+	// called once for each port the server listens on.
+	//
+	// envr				The Environment that handles the requests of the
+	//					clients that connect on this listener.
+	//
+	public void listen(ServerSocketChannel listener, Environment envr) throws IOException {
+		listener.configureBlocking(false);
+		listener.register(selector, SelectionKey.OP_ACCEPT, envr);
+	}
+
+	//
+	// addSession()
+	// ============
+	// Hands a newly accepted session socket over to this reactor. May be
+	// called from any thread.
+	//
+	// envr				The Environment that handles the client's requests.
+	//
+	public void addSession(SocketChannel sc, Environment envr) {
+		connectionCount.incrementAndGet();
+		newSessions.add(newSession(sc, envr));
+		selector.wakeup();
+	}
+
+	//
+	// requestFlush()
+	// ==============
+	// Asks this reactor to write the responses a worker has queued on one of
+	// its sessions. May be called from any thread.
+	//
+	public void requestFlush(NIOsession session) {
+		flushRequests.add(session);
+		selector.wakeup();
+	}
+
+	//
+	// queueFlush()
+	// ============
+	// As requestFlush(), but does not wake the reactor. A thread that flushes
+	// many sessions at once queues them all and then calls wakeup() once.
+	//
+	public void queueFlush(NIOsession session) {
+		flushRequests.add(session);
+	}
+
+	//
+	// wakeup()
+	// ========
+	// Wakes the reactor to flush the sessions queued with queueFlush(). May
+	// be called from any thread.
+	//
+	public void wakeup() {
+		selector.wakeup();
+	}
+
+	//
+	// get bufferPool()
+	// ================
+	public NIObufferPool bufferPool() {
+		return this.bufferPool;
+	}
+
+	//
+	// get connectionCount()
+	// =====================
+	public int connectionCount() {
+		return connectionCount.get();
+	}
+
+	//
+	// run()
+	// =====
+	// Starts the reactor on the designated thread using:
+	//    new Thread(reactor).start();
+	//
+	public void run() {
+		try {
+			runReactor();
+		} catch (Exception e) {
+			say("NIOreactor exception caught on host " + server.hostName() + " in " + Thread.currentThread().getName() + ". " + e.getMessage());
+		}
+	}
+
+	//
+	// runReactor()
+	// ============
+	// This section manages all the traffic across the client connections
+	// served by this reactor. It never returns unless there is a problem.
+	//
+	void runReactor() throws IOException {
+		SelectionKey key = null;
+
+		while (true) {
+			selector.select();
+			registerNewSessions();
+			flushRequestedSessions();
+
+			Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				key = iterator.next();
+				iterator.remove();
+
+				if (key.isValid() && key.isAcceptable()) {
+					acceptSession(key);
+				}
+				if (key.isValid() && key.isWritable()) {
+					writeSession(key);
+				}
+				if (key.isValid() && key.isReadable()) {
+					readSession(key);
+				}
+			}
+		}
+	}
+
+	//
+	// acceptSession()
+	// ===============
+	// A client is trying to connect to this server. Accept the incoming
+	// connection request on the listening socket.
+	//
+	private void acceptSession(SelectionKey key) throws IOException {
+		SocketChannel sc = ((ServerSocketChannel) key.channel()).accept();
+		if (sc != null) {
+			connectionCount.incrementAndGet();
+			registerSession(newSession(sc, (Environment) key.attachment()));
+		}
+	}
+
+	//
+	// registerNewSessions()
+	// =====================
+	private void registerNewSessions() {
+		NIOsession session;
+		while ((session = newSessions.poll()) != null) {
+			try {
+				registerSession(session);
+			} catch (IOException e) {
+				say("NIOreactor could not register session. " + e.getMessage());
+				connectionCount.decrementAndGet();
+				closeQuietly(session.channel);
+			}
+		}
+	}
+
+	//
+	// flushRequestedSessions()
+	// ========================
+	private void flushRequestedSessions() {
+		NIOsession session;
+		while ((session = flushRequests.poll()) != null) {
+			if (session.key.isValid()) {
+				// A worker has made room in the request queue, so parse
+				// any requests that were held back while it was full.
+				if (session.unparsed() != null) {
+					queueRequests(session, session.unparsed());
+				}
+				flushSession(session.key, session);
+			}
+		}
+	}
+
+	//
+	// newSession()
+	// ============
+	// Creates the state for a newly accepted session socket.
+	//
+	private NIOsession newSession(SocketChannel sc, Environment envr) {
+		NIOsession session = new NIOsession(NIOserver.MAX_FRAME_SIZE, envr.commandTable());
+		session.envr = envr;
+		session.channel = sc;
+		session.reactor = this;
+		if (server.dispatcher != null) {
+			session.createRequestQueue(NIOserver.MAX_PENDING_REQUESTS);
+		}
+		return session;
+	}
+
+	//
+	// registerSession()
+	// =================
+	// Sets the session socket to non-blocking mode, registers it for reads
+	// only and attaches the session state that reassembles its packets. Write
+	// interest is added only while the session has responses waiting to be
+	// sent. Responses are already coalesced into one write per batch, so
+	// Nagle's algorithm would only add latency.
+	//
+	private void registerSession(NIOsession session) throws IOException {
+		SocketChannel sc = session.channel;
+		sc.configureBlocking(false);
+		sc.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		session.key = sc.register(selector, SelectionKey.OP_READ, session);
+		say("Connection accepted on local address " + sc.getLocalAddress() + "\n");
+	}
+
+	//
+	// writeSession()
+	// ==============
+	// A session socket that previously filled its send buffer can accept
+	// more of its queued responses.
+	//
+	private void writeSession(SelectionKey key) {
+		NIOsession session = (NIOsession) key.attachment();
+		flushSession(key, session);
+	}
+
+	//
+	// readSession()
+	// =============
+	// Reads the data waiting on a session socket and passes each complete
+	// packet to the Environment, either inline or through the dispatcher.
+	//
+	private void readSession(SelectionKey key) {
+		SocketChannel sc = (SocketChannel) key.channel();
+		NIOsession session = (NIOsession) key.attachment();
+		NIOdispatcher dispatcher = server.dispatcher;
+		ByteBuffer byteBuffer = bufferPool.lease(session.readSize);
+
+		try {
+			int bytesRead = 0;
+			try {
+				bytesRead = sc.read(byteBuffer);
+			} catch (IOException e) {
+				say("NIOreactor Exception caught on host " + server.hostName() + " while trying to read from port " + sc.socket().getLocalPort() + ". " + e.getMessage());
+				closeSession(key);
+				return;
+			}
+
+			if (bytesRead < 0) {
+				// The end of the stream was reached indicating that the client
+				// has closed this session socket.
+				closeSession(key);
+				say("Connection closed");
+				return;
+			}
+
+			// A read that fills its buffer suggests that the client has more
+			// data waiting, so lease the next size class next time. A read
+			// that would have fitted well within a smaller class gives the
+			// larger buffer back.
+			if (!byteBuffer.hasRemaining()) {
+				session.readSize = bufferPool.largerSize(byteBuffer.capacity());
+			} else if (bytesRead <= bufferPool.smallerSize(session.readSize) / 2) {
+				session.readSize = bufferPool.smallerSize(session.readSize);
+			}
+
+			// Reassemble the packets in the data just read. Any partial
+			// packet is kept by the session until the rest of it arrives.
+			byteBuffer.flip();
+			if (dispatcher != null) {
+				queueRequests(session, byteBuffer);
+			} else {
+				while (session.nextPacket(byteBuffer, packet)) {
+					session.envr.externalEventHandler(packet, session.response);
+					if (session.pendingBytes() >= server.flushThreshold) {
+						flushSession(key, session);
+					}
+				}
+			}
+
+			// Send the batch of responses straight away if the socket will
+			// take them, otherwise wait until it is writable.
+			flushSession(key, session);
+		} finally {
+			// The session has copied any partial packet so the buffer can go
+			// straight back to the pool.
+			bufferPool.release(byteBuffer);
+		}
+	}
+
+	//
+	// queueRequests()
+	// ===============
+	// Queues the requests in the data read from a session for a worker
+	// thread, which will ask for the responses to be flushed once they are
+	// ready. Parsing stops while the request queue is full and the rest of
+	// the data is kept by the session until a worker has made room.
+	//
+	private void queueRequests(NIOsession session, ByteBuffer data) {
+		while (!session.requestsFull() && session.nextPacket(data, packet)) {
+			session.queueRequest(packet);
+		}
+		session.unparsed(data);
+		if (session.pendingRequests() > 0) {
+			server.dispatcher.schedule(session);
+		}
+	}
+
+	//
+	// flushSession()
+	// ==============
+	// Writes as much of the session's queued responses as the socket will
+	// take. A session with a protocol error is closed once everything
+	// queued for it, such as the reply rejecting its handshake, has been
+	// written in full.
+	//
+	private void flushSession(SelectionKey key, NIOsession session) {
+		try {
+			session.flush((SocketChannel) key.channel());
+			if (session.protocolError() && (session.pendingBytes() == 0)) {
+				closeSession(key);
+				return;
+			}
+			updateInterest(key, session);
+		} catch (IOException e) {
+			say("NIOreactor Exception caught on host " + server.hostName() + " while trying to write to port " + ((SocketChannel) key.channel()).socket().getLocalPort() + ". " + e.getMessage());
+			closeSession(key);
+		}
+	}
+
+	//
+	// updateInterest()
+	// ================
+	// Registers write interest only while the session has responses waiting
+	// to be sent. Reads are suspended while either backlog is over its limit,
+	// or while the session holds bytes it could not parse yet, so that a
+	// client that does not read its responses, or that sends faster than its
+	// requests can be handled, cannot exhaust memory.
+	//
+	private static void updateInterest(SelectionKey key, NIOsession session) {
+		int interestOps = 0;
+
+		if ((session.pendingBytes() < NIOserver.MAX_PENDING_OUTPUT)
+				&& !session.requestsFull() && (session.unparsed() == null)) {
+			interestOps |= SelectionKey.OP_READ;
+		}
+		if (session.pendingBytes() > 0) {
+			interestOps |= SelectionKey.OP_WRITE;
+		}
+		if (key.interestOps() != interestOps) {
+			key.interestOps(interestOps);
+		}
+	}
+
+	//
+	// closeSession()
+	// ==============
+	private void closeSession(SelectionKey key) {
+		if (!key.channel().isOpen()) {
+			return;
+		}
+		key.cancel();
+		closeQuietly(key.channel());
+		connectionCount.decrementAndGet();
+		NIOsession session = (NIOsession) key.attachment();
+		session.envr.sessionClosed(session);
+		say("Session closed. " + key.attachment());
+	}
+
+	//
+	// closeQuietly()
+	// ==============
+	private static void closeQuietly(Channel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			say("NIOreactor could not close session. " + e.getMessage());
+		}
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private boolean variable
+	// isSilent true.
+	//
+	private static void say(String whatToSay){
+		if(!isSilent) {
+			System.err.println(whatToSay);
+		}
+	}
+}
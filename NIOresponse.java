@@ -0,0 +1,308 @@
+//
+// NON-BLOCKING SERVER RESPONSE
+// ============================
+// Lets the simulation answer a request in whichever packet protocol the client
+// negotiated when it connected.
+//
+// Documentation
+// =============
+// Each NIOsession has one response writer. The Environment's external event
+// handler checks isBinary() and then either supplies the complete text packet
+// with text() or the opcode and fixed-width values with value() or values().
+// The writer encodes the response and adds it to the session's outbound queue.
+//
+// Responses written while handling a request are sent once the request has
+// been handled. Responses written at any other time, such as from the
+// simulation thread, are only sent once flush() has been called.
+//
+// A writer created without a session captures the text responses instead.
+// This supports the String based external event handler.
+//
+// Binary response packets use the same layout as binary requests:
+//
+//   Length				Unsigned 16-bit count of the bytes that follow.
+//   Opcode				Unsigned 16-bit command opcode.
+//   Values				Zero or more signed 32-bit values.
+//
+// All fields are big-endian.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added flush() for responses sent outside a request.
+// 17.10.2026 Added decimal() to send fixed-point values as text without
+//            formatting them through a String.
+// 17.10.2026 Added values() for any number of values.
+// 17.10.2026 Added packet() and the encode functions so that a packet
+//            pushed to many clients is only encoded once.
+// 17.10.2026 Added values() for three values.
+// 17.10.2026 Added queueFlush() so that the reactors can be woken once for
+//            a batch of flushes.
+// 17.10.2026 values() with an array rejects more values than a binary
+//            packet can hold.
+//
+package HVACsim;
+
+import java.nio.ByteBuffer;
+
+public class NIOresponse {
+	private final NIOsession session;
+	private String captured = "";
+
+	//
+	// NIOresponse()
+	// =============
+	// session			The session that responses are queued on.
+	//
+	public NIOresponse(NIOsession session) {
+		this.session = session;
+	}
+
+	//
+	// NIOresponse()
+	// =============
+	// Creates a writer that captures text responses. See captured().
+	//
+	public NIOresponse() {
+		this.session = null;
+	}
+
+	//
+	// isBinary()
+	// ==========
+	// Returns true if the client negotiated the binary protocol.
+	//
+	public boolean isBinary() {
+		return (session != null) && session.isBinary();
+	}
+
+	//
+	// text()
+	// ======
+	// Sends a complete text protocol packet such as "*GZ1|57.2|&".
+	//
+	public void text(String packet) {
+		if (packet.length() > 0) {
+			if (session == null) {
+				captured = captured + packet;
+			} else {
+				session.queueResponse(ByteBuffer.wrap(packet.getBytes()));
+			}
+		}
+	}
+
+	//
+	// decimal()
+	// =========
+	// Sends a text protocol packet with a single fixed-point value, such as
+	// "*GZ1|57.74|&". The packet is encoded straight into the buffer that
+	// is queued on the session.
+	//
+	// value			The value multiplied by 10 to the power of decimals.
+	//					With 2 decimals, 5774 is sent as 57.74.
+	//
+	public void decimal(String command, int value, int decimals) {
+		ByteBuffer packet = encodeDecimal(command, value, decimals);
+
+		if (session == null) {
+			captured = captured + new String(packet.array(), 0, packet.limit());
+		} else {
+			session.queueResponse(packet);
+		}
+	}
+
+	//
+	// packet()
+	// ========
+	// Sends a packet that has already been encoded by one of the encode
+	// functions, in the client's protocol. The packet is not changed, so the
+	// same one can be sent to any number of clients.
+	//
+	public void packet(ByteBuffer packet) {
+		if (session == null) {
+			captured = captured + new String(packet.array(), packet.arrayOffset() + packet.position(), packet.remaining());
+		} else {
+			session.queueResponse(packet.duplicate());
+		}
+	}
+
+	//
+	// encodeDecimal()
+	// ===============
+	// Encodes a text protocol packet as decimal() sends it, ready to be sent
+	// with packet().
+	//
+	public static ByteBuffer encodeDecimal(String command, int value, int decimals) {
+		ByteBuffer packet = ByteBuffer.allocate(command.length() + decimals + 16);
+		long magnitude = Math.abs((long) value);
+		long scale = 1;
+		int length = command.length();
+
+		packet.put((byte) '*');
+		for (int i = 0; i < length; i++) {
+			packet.put((byte) command.charAt(i));
+		}
+		packet.put((byte) '|');
+		if (value < 0) {
+			packet.put((byte) '-');
+		}
+		for (int i = 0; i < decimals; i++) {
+			scale = scale * 10;
+		}
+		putDigits(packet, magnitude / scale);
+		if (decimals > 0) {
+			packet.put((byte) '.');
+			for (scale = scale / 10; scale > 0; scale = scale / 10) {
+				packet.put((byte) ('0' + ((magnitude / scale) % 10)));
+			}
+		}
+		packet.put((byte) '|');
+		packet.put((byte) '&');
+		packet.flip();
+		return packet;
+	}
+
+	//
+	// encodeValues()
+	// ==============
+	// Encodes a binary protocol packet with two values, ready to be sent with
+	// packet().
+	//
+	public static ByteBuffer encodeValues(int opcode, int value1, int value2) {
+		ByteBuffer packet = binaryPacket(opcode, 2);
+		packet.putInt(value1);
+		packet.putInt(value2);
+		packet.flip();
+		return packet;
+	}
+
+	//
+	// value()
+	// =======
+	// Sends a binary protocol packet with a single value.
+	//
+	public void value(int opcode, int value) {
+		ByteBuffer packet = binaryPacket(opcode, 1);
+		packet.putInt(value);
+		queue(packet);
+	}
+
+	//
+	// values()
+	// ========
+	// Sends a binary protocol packet with two values.
+	//
+	public void values(int opcode, int value1, int value2) {
+		ByteBuffer packet = binaryPacket(opcode, 2);
+		packet.putInt(value1);
+		packet.putInt(value2);
+		queue(packet);
+	}
+
+	//
+	// values()
+	// ========
+	// Sends a binary protocol packet with three values.
+	//
+	public void values(int opcode, int value1, int value2, int value3) {
+		ByteBuffer packet = binaryPacket(opcode, 3);
+		packet.putInt(value1);
+		packet.putInt(value2);
+		packet.putInt(value3);
+		queue(packet);
+	}
+
+	//
+	// values()
+	// ========
+	// Sends a binary protocol packet with the first count entries of values.
+	//
+	// Throws IllegalArgumentException if count is more than a binary packet
+	// can hold, NIOserver.MAX_BINARY_VALUES.
+	//
+	public void values(int opcode, int[] values, int count) {
+		if ((count < 0) || (count > NIOserver.MAX_BINARY_VALUES)) {
+			throw new IllegalArgumentException("Cannot send " + count + " values in one binary packet");
+		}
+		ByteBuffer packet = binaryPacket(opcode, count);
+		for (int i = 0; i < count; i++) {
+			packet.putInt(values[i]);
+		}
+		queue(packet);
+	}
+
+	//
+	// flush()
+	// =======
+	// Asks the session's reactor to send the queued responses. May be called
+	// from any thread.
+	//
+	public void flush() {
+		if ((session != null) && (session.reactor != null)) {
+			session.reactor.requestFlush(session);
+		}
+	}
+
+	//
+	// queueFlush()
+	// ============
+	// As flush(), but leaves the reactor asleep so that a thread sending to
+	// many clients can wake each reactor once, with NIOreactor.wakeup(),
+	// after queueing all of its flushes.
+	//
+	// returns			The reactor that must be woken, or null if there is
+	//					none.
+	//
+	public NIOreactor queueFlush() {
+		if ((session != null) && (session.reactor != null)) {
+			session.reactor.queueFlush(session);
+			return session.reactor;
+		}
+		return null;
+	}
+
+	//
+	// get captured()
+	// ==============
+	// Returns the text responses captured by a writer without a session.
+	//
+	public String captured() {
+		return this.captured;
+	}
+
+	//
+	// binaryPacket()
+	// ==============
+	private static ByteBuffer binaryPacket(int opcode, int valueCount) {
+		ByteBuffer packet = ByteBuffer.allocate(NIOserver.BINARY_HEADER_SIZE + (4 * valueCount));
+		packet.putShort((short) (2 + (4 * valueCount)));
+		packet.putShort((short) opcode);
+		return packet;
+	}
+
+	//
+	// putDigits()
+	// ===========
+	// Writes a non-negative whole number in decimal.
+	//
+	private static void putDigits(ByteBuffer packet, long number) {
+		long scale = 1;
+
+		while (number / scale >= 10) {
+			scale = scale * 10;
+		}
+		for (; scale > 0; scale = scale / 10) {
+			packet.put((byte) ('0' + ((number / scale) % 10)));
+		}
+	}
+
+	//
+	// queue()
+	// =======
+	private void queue(ByteBuffer packet) {
+		if (session != null) {
+			packet.flip();
+			session.queueResponse(packet);
+		}
+	}
+}
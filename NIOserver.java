@@ -20,11 +20,25 @@
 // for the duration of their session. 
 //
 // The server operates on its own thread since it needs to accept incoming 
-// connections and buffer incoming data packets as soon as they arrive. To
-// free up the simulator to do other things and only request packets when
-// it is ready to, the server implements a First-In,First-Out (FIFO) packet
-// queue. Each entry contains the data sent in one packet by the client. The 
-// organisation of the fields in the packet is documented in
+// connections and process incoming data packets as soon as they arrive. Each
+// session socket has an NIOsession that reassembles the packets sent by its
+// client. Every complete packet is handed to the Environment in the order it
+// was received. The organisation of the fields in the packet is documented in
+// NIOsession.
+//
+// The selector loop that serves the session sockets lives in NIOreactor. By
+// default a single reactor runs on the server thread. Setting reactorCount()
+// switches to multi-reactor mode, in which the server thread only accepts
+// connections and an NIObalancer spreads them across that many reactor
+// threads. Each reactor reads into its own NIObufferPool, and the direct
+// memory limit is divided between them. Setting workerCount() also moves
+// command handling off the reactors onto an NIOdispatcher worker pool.
+//
+// One server can host several simulated buildings. Each building's Environment
+// is given its own listener port with addListener(), and every client is
+// routed to the Environment of the port it connected on. The buildings share
+// the server's reactors, dispatcher and buffer pools, so each additional one
+// only costs its listener socket and its own state.
 //
 // Revision History
 // ================
@@ -40,13 +54,43 @@
 // 21.01.2020 BRD Migrated the simulator event processing into the Environment class.
 //				  Fixed issue with FORTE clients that triggers an exception when 
 //				  they disconnect.
+// 17.10.2026 Each session socket now has its own NIOsession attached to its
+//            SelectionKey so packets split across reads are reassembled
+//            instead of being discarded.
+// 17.10.2026 Packets are parsed in place and dispatched straight to the
+//            Environment through one reusable NIOpacket rather than being
+//            copied into Strings and queued.
+// 17.10.2026 Session reads now use direct buffers leased from an
+//            NIObufferPool instead of allocating a heap buffer per read.
+// 17.10.2026 Responses are queued on their session and written as the
+//            socket accepts them. Write interest is only registered while
+//            a session has output pending, so an idle server now blocks in
+//            select() instead of spinning.
+// 17.10.2026 Moved the selector loop into NIOreactor and added a
+//            multi-reactor mode in which this thread only accepts
+//            connections and hands them to several reactor threads.
+// 17.10.2026 Added an optional NIOdispatcher that runs the Environment's
+//            handler on worker threads while keeping each connection's
+//            responses in order.
+// 17.10.2026 Each session now queues its requests in its own bounded ring
+//            buffer, which the dispatcher drains round-robin.
+// 17.10.2026 Added the flush threshold for the gathering writes that send
+//            each batch of responses.
+// 17.10.2026 Added the constants for the binary packet protocol.
+// 17.10.2026 Added addListener() so that one server can route clients to
+//            several Environments by listener port.
+// 17.10.2026 Replaced the shared buffer pool with one pool per reactor.
+// 17.10.2026 A full request queue now holds back the client's remaining
+//            requests instead of dropping them.
+// 17.10.2026 Removed the envr field, which is no longer used now that each
+//            session is routed to the Environment of its listener port.
 //
 package HVACsim; 
 
 import java.net.*;
-import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Iterator;
 
 import HVACsim.NIOstatus;
 import HVACsim.NIOpacket;
@@ -58,6 +102,31 @@ public class NIOserver implements Runnable {
 	// Define the default input buffer size to read IP data into.
 	final static int BUFFER_SIZE = 1024;
 
+	// The largest packet that a session will reassemble. Packets that grow
+	// beyond this without an end of packet marker are discarded as junk.
+	final static int MAX_FRAME_SIZE = 1024;
+
+	// Default size classes and direct memory limit for the read buffer pool.
+	final static int[] BUFFER_SIZE_CLASSES = {BUFFER_SIZE, 4 * BUFFER_SIZE, 16 * BUFFER_SIZE};
+	final static long MAX_BUFFER_POOL_BYTES = 4 * 1024 * 1024;
+
+	// Once this many response bytes are waiting to be written to a client,
+	// the server stops reading further requests from it until they drain.
+	final static long MAX_PENDING_OUTPUT = 64 * 1024;
+
+	// The number of requests from a client that can wait for a dispatcher
+	// worker. Once this many are queued, the server stops parsing and
+	// reading further requests from it until a worker makes room.
+	final static int MAX_PENDING_REQUESTS = 256;
+
+	// Default number of queued response bytes at which a batch of responses
+	// is written before the batch is complete.
+	final static int FLUSH_THRESHOLD = 16 * 1024;
+
+	// Maximum number of requests a dispatcher worker handles from one
+	// session before moving on to the next.
+	final static int DISPATCH_QUANTUM = 16;
+
 	// Data packet field separators. Please ensure
 	// that any changes to these are also implemented
 	// in the FORTE function blocks.
@@ -65,17 +134,44 @@ public class NIOserver implements Runnable {
 	final static String FIELD_SEPARATOR = "|";
 	final static String END_OF_PACKET = "&";
 
+	// Binary packet protocol. A client asks for it by sending the magic byte
+	// and the version as the first bytes on the connection. See NIOsession.
+	final static byte BINARY_PROTOCOL_MAGIC = (byte) 0xB1;
+	final static byte BINARY_PROTOCOL_VERSION = 1;
+	final static int BINARY_HEADER_SIZE = 4;
+	final static int MAX_BINARY_VALUES = 8;
+
 	String hostName = "";
 	int listenerPort = 0;
 	
-	Environment envr;
+	// Every port the server listens on and the Environment that the clients
+	// connecting on it are routed to, starting with the ones given to the
+	// constructor.
+	private final ArrayList<Integer> listenerPorts = new ArrayList<Integer>();
+	private final ArrayList<Environment> environments = new ArrayList<Environment>();
+	
+	// Limit on the direct memory held by the reactors' buffer pools, which
+	// is divided evenly between the reactors.
+	long maxBufferPoolBytes = MAX_BUFFER_POOL_BYTES;
+	
+	// Number of reactor threads that serve the session sockets. Zero runs
+	// the original single reactor on the server thread. The balancer picks
+	// the reactor for each new connection in multi-reactor mode.
+	int reactorCount = 0;
+	NIObalancer balancer = new NIObalancer.RoundRobin();
+	NIOreactor[] reactors = new NIOreactor[0];
+	
+	// Number of worker threads that run the Environment's handler. Zero
+	// handles every command inline on the reactor that read it.
+	int workerCount = 0;
+	NIOdispatcher dispatcher = null;
+	
+	// Responses produced from one read batch are written together with a
+	// gathering write once the batch is done or this many bytes are queued.
+	int flushThreshold = FLUSH_THRESHOLD;
 		
 	int serverStatus = NIOstatus.UNDEFINED;
 	
-	// FIFO queue for packets
-	// ======================
-	Queue<NIOpacket> FIFOqueue = new LinkedList<>();
-	
 	//
 	// Server()
 	// ========
@@ -102,7 +198,19 @@ public class NIOserver implements Runnable {
 	public NIOserver(String hostName, int listenerPort, Environment envr) {
 		this.hostName = hostName;
 		this.listenerPort = listenerPort;
-		this.envr = envr;
+		addListener(listenerPort, envr);
+	}
+	
+	//
+	// addListener()
+	// =============
+	// Adds another port for the server to listen on, whose clients are
+	// routed to a different Environment. This must be called before the
+	// server is started.
+	//
+	public void addListener(int listenerPort, Environment envr) {
+		listenerPorts.add(listenerPort);
+		environments.add(envr);
 	}
 
 	//
@@ -123,7 +231,7 @@ public class NIOserver implements Runnable {
 		try {
 			startServer(hostName, listenerPort);
 		} catch (Exception e) {
-			say("NIOserver exception caught on host " + hostName + " while starting server on listener port " + listenerPort + ". " + e.getMessage()); 
+			say("NIOserver exception caught on host " + hostName + " while starting server on listener ports " + listenerPorts + ". " + e.getMessage()); 
 			serverStatus = NIOstatus.EXIT_FAILURE;
 		}
 	}
@@ -147,21 +255,15 @@ public class NIOserver implements Runnable {
 	//						will hand over the connection to an individual
 	//						session socket that will manage the traffic for
 	//						that client for the duration of the session.
+	//						Any ports added with addListener() are opened
+	//						as well.
 	//
 	// returns				One of the NIOstatus status codes. Note that
 	//						this function never exits unless it is shut
 	//                      down or there is a problem.
 	//
-	@SuppressWarnings("static-access")
 	public int startServer(String hostName, int listenerPort) throws Exception {
 		int serverStatus = NIOstatus.EXIT_SUCCESS;
-		NIOpacket packet = new NIOpacket();
-		int packetLength = 0;
-		String replyPacket = "";
-		int lastSetTemperature = 0;
-		int setTemperature = 0;
-		String responsePacket = "";
-		String command = "";	
 		
 		if (hostName.equals("")) {
 			serverStatus = NIOstatus.INVALID_HOST_NAME;
@@ -170,96 +272,40 @@ public class NIOserver implements Runnable {
 		} else {
 			// Resolve the host address.
 			InetAddress host = InetAddress.getByName(hostName);
-		
-			Selector selector = Selector.open();
 
-			// Open a non-blocking listener socket to accept incoming connections.
-			ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
-			serverSocketChannel.configureBlocking(false);
-			serverSocketChannel.bind(new InetSocketAddress(host, listenerPort));
-			serverSocketChannel.register(selector,  SelectionKey.OP_ACCEPT);
-
-			// Ensure that after the channel has been opened, no channel is 
-			// marked as "accepted".
-			SelectionKey key = null;
+			// Open the listener sockets to accept incoming connections.
+			ServerSocketChannel[] listeners = new ServerSocketChannel[listenerPorts.size()];
+			for (int i = 0; i < listeners.length; i++) {
+				listeners[i] = ServerSocketChannel.open();
+				listeners[i].bind(new InetSocketAddress(host, listenerPorts.get(i)));
+			}
 			serverStatus = NIOstatus.EXIT_SUCCESS;
+			
+			if (workerCount > 0) {
+				dispatcher = new NIOdispatcher(workerCount, DISPATCH_QUANTUM, flushThreshold);
+			}
 
-			// This section manages all the traffic across multiple client
-			// connections.
-			while (true) {
-				
-				if (selector.select() > 0) {
-					Set<SelectionKey> selectedKeys = selector.selectedKeys();
-					Iterator<SelectionKey> iterator = selectedKeys.iterator();
-
-					while(iterator.hasNext()) {
-						key = (SelectionKey) iterator.next();
-						iterator.remove();
-				
-						if (key.isAcceptable()) {
-							// A client is trying to connect to this server.
-							// Accept the incoming connection request on this
-							// listening socket.
-							SocketChannel sc = serverSocketChannel.accept();
-							// Set this to non-blocking mode.
-							sc.configureBlocking(false);
-							// Set the socket to read and write mode.
-							sc.register(selector,  SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-							say("Connection accepted on local address " + sc.getLocalAddress() + "\n");
-						}
-
-						if (key.isReadable()) {
-							// This session socket was opened as a result of a
-							// previous request for a connection on the server's
-							// listener socket. It is therefore able to read data
-							// sent to it. Try to read the data there into a
-							// buffer.
-							SocketChannel sc = (SocketChannel) key.channel();
-							ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
-							
-							try {
-								sc.read(byteBuffer);
-							} catch (Exception e) {
-								say("NIOserver Exception caught on host " + hostName + " while trying to read from port " + listenerPort + ". " + e.getMessage());
-								sc.close();
-							}
-								
-							if (sc.isConnected()) {
-								String dataPacket = new String (byteBuffer.array()).trim();
-								packetLength = dataPacket.length();
-								if (packetLength <= 0 ) {
-									// A null packet was received indicating that the server should close this
-									// session socket.
-									sc.close();								
-									say("Connection closed");
-								} else {
-									//System.out.println("[" + dataPacket + "]");
-								
-									// RA_BRD Interesting way of uniquely identifying this socket amongst the connections.
-									// Perhaps we could run separate FIFO queues for each socket based on this identifier?
-									// System.out.println("socket identifier " + key.hashCode());								
-									queuePacket(dataPacket);
-									
-									while (getQueueSize() > 0) {
-										packet = getPacket();
-										responsePacket = envr.externalEventHandler(packet.command(), packet.commandData());
-										if (responsePacket.length() > 0) {
-											say("Response packet [" + responsePacket + "]");
-											if (key.isWritable()) {											
-												ByteBuffer byteBuffer2 = ByteBuffer.wrap(responsePacket.getBytes());
-												sc.write(byteBuffer2);
-												byteBuffer2.clear();
-												replyPacket = "";
-											}
-										}
-									}
-								}	
-							}
-								
-						}
-					}	
+			if (reactorCount <= 0) {
+				// Single reactor mode. One reactor on this thread accepts
+				// connections and manages all the traffic across them.
+				NIOreactor reactor = new NIOreactor(this, maxBufferPoolBytes);
+				reactors = new NIOreactor[] {reactor};
+				for (int i = 0; i < listeners.length; i++) {
+					reactor.listen(listeners[i], environments.get(i));
+				}
+				reactor.runReactor();
+			} else {
+				// Multi-reactor mode. Start the reactor threads, then accept
+				// connections on this thread and hand each one over to the
+				// reactor chosen by the balancer.
+				reactors = new NIOreactor[reactorCount];
+				for (int i = 0; i < reactorCount; i++) {
+					reactors[i] = new NIOreactor(this, maxBufferPoolBytes / reactorCount);
+					Thread thread = new Thread(reactors[i], "NIOreactor-" + i);
+					thread.setDaemon(true);
+					thread.start();
 				}
-				Thread.currentThread().yield();
+				acceptSessions(listeners);
 			}
 		}
 		say("NIOserver jumped out of the server loop");
@@ -267,109 +313,87 @@ public class NIOserver implements Runnable {
 	}
 
 	//
-	// queuePacket()
-	// =============
-	// Splits up the data packet received into separate messages from each
-	// Service Interface Function Block agent and queues them into the FIFO
-	// message buffer. Since this is a non-blocking server, partial, incomplete
-	// packets may be read in at times. The packet structure allows incomplete
-	// packets to be buffered. The function only queues complete packets.
-	//
-	// Packet structure
+	// acceptSessions()
 	// ================
-	// This example packet containing two data message packets together: *2|9|57.002834*1|6|-34.45
-	//
-	// 	 Start of packet character - currently character *
-	//   Command string. Typically two or three character strings such as RS or Z1
-	// 	 Field separator - currently character |
-	//   Command data. May be blank if not needed.
-	//   Field separator
-	//   End of packet character - currently &
-	//
-	private void queuePacket(String dataPacket) {
-		int ptrStart = 0;
-		int ptrEnd = 0;
-		int ptrFieldStart = 0;
-		int ptrFieldEnd = 0;
-		int packetLen = dataPacket.length();
+	// Accepts the connections on every listener socket in multi-reactor mode
+	// and hands each one to the reactor chosen by the balancer, along with
+	// the Environment of the port it connected on. Never returns unless
+	// there is a problem.
+	//
+	private void acceptSessions(ServerSocketChannel[] listeners) throws Exception {
+		Selector acceptor = Selector.open();
 		
-		String message = "";
-		String command = "";
-		String commandData = "";
-
-		say("Entire data packet received [" + dataPacket + "]  length = " + packetLen + "\n");	
-
-		if (packetLen > 0) {
-			ptrStart = -1;
-			ptrEnd = 0;
-			while (ptrStart < packetLen) {
-				// Reinitialise for the next message.
-				message = "";
-				// Locate the start of the next message in the data packet
-				ptrStart = dataPacket.indexOf(START_OF_PACKET, ptrEnd);
-				if (ptrStart >= 0) {
-					// Found the start of a new packet in the buffer. Locate
-					// the end of the packet.
-					ptrEnd = dataPacket.indexOf(END_OF_PACKET, ptrStart);
-					if (ptrEnd == -1) {
-						// There is no end of packet marker so either we have an incomplete buffer 
-						// or lots of junk. At present, assume junk. 
-						// RA_BRD - Review this after more testing.
-						break;
-					} else {
-						message = dataPacket.substring(ptrStart, ptrEnd + 1);
-						say("Found message [" + message + "]");
-						command = "";
-						commandData = "";
-						ptrFieldStart = 1;
-						ptrFieldEnd = message.indexOf(FIELD_SEPARATOR);
-						if (ptrFieldEnd > 0) {
-							command = message.substring(ptrFieldStart, ptrFieldEnd);
-							if (command.length() > 0) {
-								ptrFieldStart = ptrFieldEnd;
-								ptrFieldEnd = message.indexOf(FIELD_SEPARATOR, ptrFieldStart + 1);
-								if (ptrFieldEnd > 0) {
-									commandData = message.substring(ptrFieldStart + 1, ptrFieldEnd);
-									say("-- message [" + command + "] [" + commandData + "]");
-									NIOpacket packet = new NIOpacket();	
-									packet.command(command);
-									packet.commandData(commandData);
-									FIFOqueue.add(packet);
-								}	
-							} else {
-								say("Missing command field in current packet."); 
-							}
-						}	
-						ptrStart = ptrEnd;
-					}	
-				} else {
-					// There are no more messages in the buffer.
-					break;	
-				}	
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i].configureBlocking(false);
+			listeners[i].register(acceptor, SelectionKey.OP_ACCEPT, environments.get(i));
+		}
+		while (true) {
+			acceptor.select();
+			Iterator<SelectionKey> iterator = acceptor.selectedKeys().iterator();
+			while (iterator.hasNext()) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				SocketChannel sc = ((ServerSocketChannel) key.channel()).accept();
+				if (sc != null) {
+					balancer.select(reactors).addSession(sc, (Environment) key.attachment());
+				}
 			}
 		}
 	}
-					
+
+	//
+	// set maxBufferPoolBytes
+	// ======================
+	// Sets the limit on the direct memory that the reactors' buffer pools
+	// may hold between them. This must be called before the server is
+	// started.
 	//
-	// getQueueSize()
-	// ==============
-	public int getQueueSize() {
-		return FIFOqueue.size();
+	public void maxBufferPoolBytes(long maxBufferPoolBytes) {
+		this.maxBufferPoolBytes = maxBufferPoolBytes;
 	}
+	
 	//
-	// getPacket()
-	// ===========
-	public NIOpacket getPacket() {		
-		NIOpacket packet = new NIOpacket();
-		boolean found = false;
-		String dataPacket = "";
-		
-		if (FIFOqueue.size() > 0) {
-			packet = FIFOqueue.poll();
-			say("getPacket()- [" + packet.command() + "] [" + packet.commandData() + "]");
-			found = true;
-		}	
-		return packet;
+	// set reactorCount
+	// ================
+	// Sets the number of reactor threads that serve the session sockets,
+	// for example one per core. Zero, the default, runs a single reactor
+	// on the server thread. This must be called before the server is
+	// started.
+	//
+	public void reactorCount(int reactorCount) {
+		this.reactorCount = reactorCount;
+	}
+	
+	//
+	// set workerCount
+	// ===============
+	// Sets the number of worker threads that run the Environment's external
+	// event handler. Zero, the default, runs it inline on the reactors. This
+	// must be called before the server is started.
+	//
+	public void workerCount(int workerCount) {
+		this.workerCount = workerCount;
+	}
+	
+	//
+	// set flushThreshold
+	// ==================
+	// Sets the number of queued response bytes at which a batch of responses
+	// is written early. This must be called before the server is started.
+	//
+	public void flushThreshold(int flushThreshold) {
+		this.flushThreshold = flushThreshold;
+	}
+	
+	//
+	// set balancer
+	// ============
+	// Sets the strategy that spreads new connections across the reactors
+	// in multi-reactor mode. This must be called before the server is
+	// started.
+	//
+	public void balancer(NIObalancer balancer) {
+		this.balancer = balancer;
 	}
 	
 	//
@@ -0,0 +1,621 @@
+//
+// NON-BLOCKING SERVER SESSION
+// ===========================
+// Holds the state that belongs to one client session socket for the duration
+// of its connection. An instance is created when the server accepts a new
+// connection and is attached to the SelectionKey of the session socket so
+// that it travels with every readiness event for that client.
+//
+// Documentation
+// =============
+// TCP is a stream protocol, so the boundaries of the reads seen by the server
+// have nothing to do with the boundaries of the packets written by the FORTE
+// clients. A single read may contain several packets, and a packet may be split
+// across two or more reads. The session therefore reassembles packets
+// incrementally: every byte received is examined exactly once and any partial
+// packet left at the end of a read is kept until the rest of it arrives.
+//
+// Packets that grow larger than the maximum frame size without an end of packet
+// marker are treated as junk and discarded. The parser then resynchronises on
+// the next start of packet character.
+//
+// Responses are added to an outbound queue rather than being written directly.
+// A non-blocking write may accept only part of a response when the socket send
+// buffer is full. The rest stays at the head of the queue and is written when
+// the selector reports that the socket is writable again.
+//
+// The responses produced from one read, or from one pass of a dispatcher
+// worker, are collected and then flushed together with one gathering write.
+// A pipelining client that sends many packets in one segment therefore costs
+// one write system call per batch rather than one per response. Batches that
+// grow beyond the flush threshold are written early so that a large burst is
+// not held back.
+//
+// When the server has an NIOdispatcher, complete packets are copied into the
+// session's request queue and handled on a worker thread instead of on the
+// reactor. Only one worker drains a session at a time, so the requests of one
+// client are handled, and their responses queued, strictly in order. The
+// request queue is a bounded ring buffer that is only created when the server
+// has a dispatcher. Once it is full the reactor stops parsing: the bytes it has
+// not parsed are kept by the session and reads are suspended until a worker
+// has made room, so a fast client is slowed down rather than losing requests.
+// The outbound queue is shared between the reactor
+// and a worker and is guarded by the session's lock.
+//
+// Packet structure
+// ================
+// This example contains two data message packets together: *RS|9|&*Z1|-34.45|&
+//
+// 	 Start of packet character - currently character *
+//   Command string. Typically two or three character strings such as RS or Z1
+// 	 Field separator - currently character |
+//   Command data. May be blank if not needed.
+//   Field separator
+//   End of packet character - currently &
+//
+// Binary protocol
+// ===============
+// A client that only exchanges numeric values can use a compact binary protocol
+// instead. It asks for it by sending the two byte handshake
+//
+//   Magic byte			NIOserver.BINARY_PROTOCOL_MAGIC (0xB1). This can never
+//						start a text packet.
+//   Version			NIOserver.BINARY_PROTOCOL_VERSION.
+//
+// as the very first bytes on the connection. The server echoes the handshake
+// to accept it, or answers with version 0 and closes the connection if it does
+// not support the version asked for. A connection that starts with anything
+// else uses the text protocol, so existing FORTE function blocks are not
+// affected. Every binary packet after the handshake, in either direction, is
+//
+//   Length				Unsigned 16-bit count of the bytes that follow.
+//   Opcode				Unsigned 16-bit command opcode from the simulation's
+//						NIOcommandTable.
+//   Values				Zero to NIOserver.MAX_BINARY_VALUES signed 32-bit
+//						values. Temperatures are sent in hundredths of a
+//						degree.
+//
+// All fields are big-endian. Binary packets have no delimiters to resynchronise
+// on, so a packet with an invalid length is a protocol error and the server
+// closes the connection.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version. Split packets are now reassembled rather
+//            than being discarded as junk.
+// 17.10.2026 Packets are handed out one at a time as views over the
+//            reassembly buffer so that the parser does not allocate.
+// 17.10.2026 Added the outbound queue. Responses are queued and written
+//            as the socket accepts them so short writes are never lost.
+// 17.10.2026 Added the request queue that holds packets waiting for a
+//            dispatcher worker thread.
+// 17.10.2026 The request queue is now a bounded NIOpacketQueue ring buffer
+//            with depth and drop counters.
+// 17.10.2026 Queued responses are now sent with a single gathering write
+//            per batch instead of one write per response.
+// 17.10.2026 Added the binary packet protocol, negotiated by the first
+//            bytes a client sends after connecting.
+// 17.10.2026 Text commands are looked up in the command table as soon as
+//            their packet is complete.
+// 17.10.2026 Each session now records the Environment its client is
+//            connected to, so that one server can host many buildings.
+// 17.10.2026 A start of packet marker that overflows a junk frame now starts
+//            the next packet instead of being discarded with it.
+// 17.10.2026 The request queue is only created for a server with a
+//            dispatcher, and is no larger than the pending request limit.
+//            Bytes that cannot be parsed while it is full are kept rather
+//            than their requests being dropped.
+// 17.10.2026 Replaced the dropped request count, which could no longer
+//            change, with a count of the reads held back by a full queue.
+//
+package HVACsim;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class NIOsession {
+	// Flag to silence the status messages written to the console.
+	private static boolean isSilent = true;
+
+	// Byte values of the packet delimiters defined in NIOserver.
+	private static final byte START_OF_PACKET = (byte) NIOserver.START_OF_PACKET.charAt(0);
+	private static final byte FIELD_SEPARATOR = (byte) NIOserver.FIELD_SEPARATOR.charAt(0);
+	private static final byte END_OF_PACKET = (byte) NIOserver.END_OF_PACKET.charAt(0);
+
+	// Parser states.
+	private static final int WAITING_FOR_START = 0;
+	private static final int IN_PACKET = 1;
+
+	// Packet protocols.
+	private static final int PROTOCOL_UNDECIDED = 0;
+	private static final int PROTOCOL_HANDSHAKE = 1;
+	private static final int PROTOCOL_TEXT = 2;
+	private static final int PROTOCOL_BINARY = 3;
+	private static final int PROTOCOL_ERROR = 4;
+
+	// Reassembly buffer for the packet currently being received. It holds
+	// the bytes between the start and end of packet markers.
+	private final byte[] frame;
+	private int frameLength = 0;
+	private int state = WAITING_FOR_START;
+
+	// Positions of the first and second field separators in the frame, or
+	// -1 if they have not been seen yet.
+	private int firstSeparator = -1;
+	private int secondSeparator = -1;
+
+	// Number of packets discarded because they exceeded the maximum frame size.
+	long oversizePackets = 0;
+
+	// Number of times parsing stopped with data left because the request
+	// queue was full.
+	long stalledReads = 0;
+
+	// Capacity of the buffer the reactor leases for the next read from this
+	// session. It follows the amount of data the client sends at once.
+	int readSize = NIOserver.BUFFER_SIZE;
+
+	// The protocol the client negotiated, and the progress through the length
+	// header of the binary packet currently being received.
+	private volatile int protocol = PROTOCOL_UNDECIDED;
+	private int headerBytes = 0;
+	private int binaryLength = 0;
+
+	// Translates text commands into opcodes and binary opcodes into command
+	// names.
+	private final NIOcommandTable commandTable;
+
+	// Writes responses to this session in the protocol it negotiated.
+	final NIOresponse response = new NIOresponse(this);
+
+	// Responses waiting to be written to the session socket, and the number
+	// of bytes they still hold.
+	// The unwritten responses are held between outboundStart and outboundEnd
+	// so that they can be passed to a gathering write as they are.
+	private ByteBuffer[] outbound = new ByteBuffer[16];
+	private int outboundStart = 0;
+	private int outboundEnd = 0;
+	private long pendingBytes = 0;
+
+	// Number of write system calls made, and responses sent, on this session.
+	private long writeCalls = 0;
+	private long responsesSent = 0;
+
+	// Requests waiting for a dispatcher worker, or null if the server handles
+	// requests on the reactor.
+	private NIOpacketQueue requests = null;
+
+	// Bytes read from the client that have not been parsed yet because the
+	// request queue was full, or null if there are none. Only the reactor
+	// uses this.
+	private ByteBuffer unparsed = null;
+
+	// Set while the session is queued on, or being drained by, a worker.
+	final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	// The task a dispatcher runs to drain this session, created once.
+	Runnable drainTask = null;
+
+	// The reactor that owns this session socket and its selection key.
+	NIOreactor reactor = null;
+	SelectionKey key = null;
+
+	// The Environment that handles this client's requests, chosen by the
+	// listener port it connected to, and the session socket while it waits
+	// to be registered with its reactor.
+	Environment envr = null;
+	SocketChannel channel = null;
+
+	//
+	// NIOsession()
+	// ============
+	// maxFrameSize		The largest packet, excluding the start and end of
+	//					packet markers, that will be reassembled. Anything
+	//					longer is discarded.
+	//
+	// commandTable		The simulation's command table, used to name the
+	//					opcodes of binary protocol requests.
+	//
+	public NIOsession(int maxFrameSize, NIOcommandTable commandTable) {
+		this.frame = new byte[maxFrameSize];
+		this.commandTable = commandTable;
+	}
+
+	//
+	// nextPacket()
+	// ============
+	// Consumes the bytes that have just been read from the session socket
+	// until the next packet is complete. Bytes belonging to a packet that is
+	// not yet complete are retained for the next call. Call this repeatedly
+	// until it returns false to process every packet in the data read.
+	//
+	// data				Buffer flipped ready for reading. On return it is
+	//					positioned just after the packet found.
+	//
+	// packet			Reusable packet that is pointed at the command and
+	//					command data fields of the packet found. It remains
+	//					valid until the next call.
+	//
+	// returns			True if a complete packet was found.
+	//
+	public boolean nextPacket(ByteBuffer data, NIOpacket packet) {
+		while (data.hasRemaining()) {
+			switch (protocol) {
+			case PROTOCOL_TEXT:
+				return nextTextPacket(data, packet);
+			case PROTOCOL_BINARY:
+				return nextBinaryPacket(data, packet);
+			case PROTOCOL_ERROR:
+				// Ignore everything until the connection is closed.
+				data.position(data.limit());
+				return false;
+			default:
+				negotiate(data.get());
+				break;
+			}
+		}
+		return false;
+	}
+
+	//
+	// negotiate()
+	// ===========
+	// Decides the protocol from the first bytes sent by the client.
+	//
+	private void negotiate(byte b) {
+		if (protocol == PROTOCOL_UNDECIDED) {
+			if (b == NIOserver.BINARY_PROTOCOL_MAGIC) {
+				protocol = PROTOCOL_HANDSHAKE;
+			} else {
+				protocol = PROTOCOL_TEXT;
+				if (b == START_OF_PACKET) {
+					startFrame();
+				}
+			}
+		} else if (b == NIOserver.BINARY_PROTOCOL_VERSION) {
+			say("Binary protocol version " + b + " negotiated");
+			protocol = PROTOCOL_BINARY;
+			queueResponse(ByteBuffer.wrap(new byte[] {NIOserver.BINARY_PROTOCOL_MAGIC, NIOserver.BINARY_PROTOCOL_VERSION}));
+		} else {
+			say("Unsupported binary protocol version " + b + " requested");
+			protocol = PROTOCOL_ERROR;
+			queueResponse(ByteBuffer.wrap(new byte[] {NIOserver.BINARY_PROTOCOL_MAGIC, 0}));
+		}
+	}
+
+	//
+	// nextTextPacket()
+	// ================
+	private boolean nextTextPacket(ByteBuffer data, NIOpacket packet) {
+		while (data.hasRemaining()) {
+			byte b = data.get();
+			if (state == WAITING_FOR_START) {
+				if (b == START_OF_PACKET) {
+					startFrame();
+				}
+			} else if (b == END_OF_PACKET) {
+				state = WAITING_FOR_START;
+				if (completeFrame(packet)) {
+					return true;
+				}
+			} else if (frameLength == frame.length) {
+				// There is no end of packet marker within the maximum frame
+				// size so assume that this is junk. The byte that overflowed
+				// the frame may itself start the next packet.
+				say("Discarding packet longer than " + frame.length + " bytes");
+				oversizePackets++;
+				if (b == START_OF_PACKET) {
+					startFrame();
+				} else {
+					state = WAITING_FOR_START;
+				}
+			} else {
+				if (b == FIELD_SEPARATOR) {
+					if (firstSeparator < 0) {
+						firstSeparator = frameLength;
+					} else if (secondSeparator < 0) {
+						secondSeparator = frameLength;
+					}
+				}
+				frame[frameLength++] = b;
+			}
+		}
+		return false;
+	}
+
+	//
+	// nextBinaryPacket()
+	// ==================
+	// Reassembles a length-prefixed binary packet. The body, holding the
+	// opcode and values, is copied into the frame buffer as it arrives.
+	//
+	private boolean nextBinaryPacket(ByteBuffer data, NIOpacket packet) {
+		while (data.hasRemaining()) {
+			if (headerBytes < 2) {
+				binaryLength = (binaryLength << 8) | (data.get() & 0xFF);
+				headerBytes++;
+				if (headerBytes == 2) {
+					if ((binaryLength < 2) || (binaryLength > 2 + (4 * NIOserver.MAX_BINARY_VALUES))
+							|| (((binaryLength - 2) % 4) != 0)) {
+						say("Invalid binary packet length " + binaryLength);
+						protocol = PROTOCOL_ERROR;
+						data.position(data.limit());
+						return false;
+					}
+					frameLength = 0;
+				}
+			} else {
+				int length = Math.min(data.remaining(), binaryLength - frameLength);
+				data.get(frame, frameLength, length);
+				frameLength += length;
+				if (frameLength == binaryLength) {
+					int opcode = ((frame[0] & 0xFF) << 8) | (frame[1] & 0xFF);
+					packet.binaryView(opcode, commandTable.name(opcode), frame, 2, (binaryLength - 2) / 4);
+					headerBytes = 0;
+					binaryLength = 0;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	//
+	// startFrame()
+	// ============
+	private void startFrame() {
+		state = IN_PACKET;
+		frameLength = 0;
+		firstSeparator = -1;
+		secondSeparator = -1;
+	}
+
+	//
+	// completeFrame()
+	// ===============
+	// Points the packet at the command and command data fields of a
+	// complete frame and looks up the opcode of its command. Frames without
+	// both field separators or without a command are discarded, as before.
+	//
+	private boolean completeFrame(NIOpacket packet) {
+		if (secondSeparator < 0) {
+			return false;
+		}
+		if (firstSeparator == 0) {
+			say("Missing command field in current packet.");
+			return false;
+		}
+		packet.view(frame, 0, firstSeparator, firstSeparator + 1, secondSeparator - firstSeparator - 1);
+		int opcode = commandTable.opcode(frame, 0, firstSeparator);
+		if (opcode >= 0) {
+			packet.resolve(opcode, commandTable.name(opcode));
+		}
+		return true;
+	}
+
+	//
+	// isBinary()
+	// ==========
+	// Returns true if the client negotiated the binary protocol.
+	//
+	public boolean isBinary() {
+		return protocol == PROTOCOL_BINARY;
+	}
+
+	//
+	// protocolError()
+	// ===============
+	// Returns true if the client broke the protocol and the connection
+	// should be closed once any response has been sent.
+	//
+	public boolean protocolError() {
+		return protocol == PROTOCOL_ERROR;
+	}
+
+	//
+	// queueResponse()
+	// ===============
+	// Adds a response to the end of the outbound queue. It is written by the
+	// next call to flush().
+	//
+	public synchronized void queueResponse(ByteBuffer response) {
+		if (response.hasRemaining()) {
+			if (outboundEnd == outbound.length) {
+				if (outboundStart > 0) {
+					// Move the unwritten responses back to the front.
+					System.arraycopy(outbound, outboundStart, outbound, 0, outboundEnd - outboundStart);
+					Arrays.fill(outbound, outboundEnd - outboundStart, outboundEnd, null);
+					outboundEnd -= outboundStart;
+					outboundStart = 0;
+				} else {
+					outbound = Arrays.copyOf(outbound, outbound.length * 2);
+				}
+			}
+			outbound[outboundEnd++] = response;
+			pendingBytes += response.remaining();
+		}
+	}
+
+	//
+	// flush()
+	// =======
+	// Writes as much of the outbound queue as the socket will accept without
+	// blocking, using gathering writes. Partially written responses stay at
+	// the head of the queue.
+	//
+	// sc				The session socket.
+	//
+	// returns			True if the outbound queue is now empty.
+	//
+	public synchronized boolean flush(SocketChannel sc) throws IOException {
+		while (outboundStart < outboundEnd) {
+			long written = sc.write(outbound, outboundStart, outboundEnd - outboundStart);
+			writeCalls++;
+			pendingBytes -= written;
+			while ((outboundStart < outboundEnd) && !outbound[outboundStart].hasRemaining()) {
+				outbound[outboundStart++] = null;
+				responsesSent++;
+			}
+			if (written == 0) {
+				// The socket send buffer is full.
+				break;
+			}
+		}
+		if (outboundStart == outboundEnd) {
+			outboundStart = 0;
+			outboundEnd = 0;
+			return true;
+		}
+		return false;
+	}
+
+	//
+	// get pendingBytes()
+	// ==================
+	public synchronized long pendingBytes() {
+		return this.pendingBytes;
+	}
+
+	//
+	// get writeCalls()
+	// ================
+	public synchronized long writeCalls() {
+		return this.writeCalls;
+	}
+
+	//
+	// get responsesSent()
+	// ===================
+	public synchronized long responsesSent() {
+		return this.responsesSent;
+	}
+
+	//
+	// createRequestQueue()
+	// ====================
+	// Gives the session a request queue, when the server has a dispatcher.
+	// This must be called before the session is registered with its reactor.
+	//
+	// capacity			The most requests that can wait for a worker.
+	//
+	public void createRequestQueue(int capacity) {
+		requests = new NIOpacketQueue(capacity);
+	}
+
+	//
+	// queueRequest()
+	// ==============
+	// Copies a packet into the request queue so that it can be handled on
+	// a worker thread after the parser has moved on. Check requestsFull()
+	// before parsing the packet.
+	//
+	// returns			False if the queue was full and the packet was not
+	//					queued.
+	//
+	public boolean queueRequest(NIOpacket packet) {
+		if (!requests.offer(packet)) {
+			say("Request queue full, command '" + packet.command() + "' was not queued");
+			return false;
+		}
+		return true;
+	}
+
+	//
+	// requestsFull()
+	// ==============
+	// Returns true if no more requests can be queued until a worker has
+	// handled some of them.
+	//
+	public boolean requestsFull() {
+		return (requests != null) && requests.isFull();
+	}
+
+	//
+	// set unparsed()
+	// ==============
+	// Keeps the bytes remaining in a buffer that could not be parsed because
+	// the request queue was full, and counts the stall. A buffer that has
+	// been completely parsed clears them.
+	//
+	void unparsed(ByteBuffer data) {
+		if (!data.hasRemaining()) {
+			unparsed = null;
+			return;
+		}
+		stalledReads++;
+		if (data != unparsed) {
+			unparsed = ByteBuffer.allocate(data.remaining());
+			unparsed.put(data);
+			unparsed.flip();
+		}
+	}
+
+	//
+	// get unparsed()
+	// ==============
+	// Returns the bytes kept by unparsed(), ready for reading, or null.
+	//
+	ByteBuffer unparsed() {
+		return this.unparsed;
+	}
+
+	//
+	// nextRequest()
+	// =============
+	// Returns the oldest queued request without removing it, or null if
+	// there are none. Call removeRequest() once it has been handled.
+	//
+	public NIOpacket nextRequest() {
+		return (requests == null) ? null : requests.peek();
+	}
+
+	//
+	// removeRequest()
+	// ===============
+	public void removeRequest() {
+		if (requests != null) {
+			requests.remove();
+		}
+	}
+
+	//
+	// get pendingRequests()
+	// =====================
+	public int pendingRequests() {
+		return (requests == null) ? 0 : requests.size();
+	}
+
+	//
+	// get maxRequestDepth()
+	// =====================
+	public int maxRequestDepth() {
+		return (requests == null) ? 0 : requests.maxDepth();
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "NIOsession pendingRequests=" + pendingRequests() + " maxRequestDepth=" + maxRequestDepth()
+				+ " stalledReads=" + stalledReads + " oversizePackets=" + oversizePackets
+				+ " pendingBytes=" + pendingBytes() + " writeCalls=" + writeCalls() + " responsesSent=" + responsesSent();
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private boolean variable
+	// isSilent true.
+	//
+	private static void say(String whatToSay){
+		if(!isSilent) {
+			System.err.println(whatToSay);
+		}
+	}
+}
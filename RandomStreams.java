@@ -0,0 +1,88 @@
+//
+// RANDOM STREAMS
+// ==============
+// Gives each zone of the simulation its own random number generator, all
+// derived from a single seed for the run.
+//
+// Documentation
+// =============
+// A run is reproduced by starting it with the same seed. The seed is split
+// into one SplittableRandom stream per zone, in zone order, so zone n always
+// gets the same stream for a given seed. Each stream is only ever used for
+// its own zone, so the sequence of numbers a zone draws does not depend on
+// how many threads the model runs on, which thread handles the zone, or the
+// order in which the zones are handled. Nor is there a shared generator for
+// the threads to contend on.
+//
+// The streams are not thread-safe. Each must only be used by the thread
+// updating its zone during the tick.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class RandomStreams {
+	private final long seed;
+	private final SplittableRandom root;
+	private SplittableRandom[] streams = new SplittableRandom[0];
+
+	//
+	// RandomStreams()
+	// ===============
+	// seed				Seed for the run.
+	//
+	// zoneCount		Number of zones to create streams for.
+	//
+	public RandomStreams(long seed, int zoneCount) {
+		this.seed = seed;
+		this.root = new SplittableRandom(seed);
+		ensureZones(zoneCount);
+	}
+
+	//
+	// ensureZones()
+	// =============
+	// Creates the streams for any zones that have been added since. The new
+	// streams are split off in zone order, so they are the same as if the
+	// zones had been there from the start.
+	//
+	public void ensureZones(int zoneCount) {
+		if (zoneCount > streams.length) {
+			int first = streams.length;
+			streams = Arrays.copyOf(streams, zoneCount);
+			for (int zone = first; zone < zoneCount; zone++) {
+				streams[zone] = root.split();
+			}
+		}
+	}
+
+	//
+	// stream()
+	// ========
+	// Returns the random number generator of a zone.
+	//
+	public SplittableRandom stream(int zone) {
+		return streams[zone];
+	}
+
+	//
+	// get seed()
+	// ==========
+	public long seed() {
+		return this.seed;
+	}
+
+	//
+	// newSeed()
+	// =========
+	// Returns a seed for a run that has not been given one.
+	//
+	public static long newSeed() {
+		return new SplittableRandom().nextLong();
+	}
+}
@@ -0,0 +1,219 @@
+//
+// SIMULATION CLOCK
+// ================
+// Keeps the simulated time and sets how fast the TickScheduler advances it
+// compared with real time.
+//
+// Documentation
+// =============
+// Each tick advances the simulation by one tick period of simulated time. The
+// mode of the clock sets how much real time the scheduler waits between ticks:
+//
+//   REAL_TIME			One tick period. One second of simulated time takes
+//						one second.
+//
+//   SCALED				The tick period divided by the speed. At a speed of
+//						10, one second of simulated time takes 100 ms.
+//
+//   FREE_RUNNING		None. Ticks are run back to back as fast as the model
+//						can calculate them. Useful for regression runs.
+//
+//   LOCKSTEP			Until every client taking part has acknowledged the
+//						previous tick on the clock's LockstepBarrier.
+//
+// The simulated time is the tick number multiplied by the tick period, so it
+// does not depend on the mode or on how long each tick took. In the paced
+// modes, ticks that the scheduler skips because they were missed still
+// advance the simulated time, so that it keeps pace with real time. Model
+// logic that depends on time should use simulatedTime() rather than the
+// system clock.
+//
+// The mode and tick period must be set before the scheduler is started.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added the lockstep mode.
+//
+package HVACsim;
+
+import java.util.concurrent.TimeUnit;
+
+public class SimulationClock {
+	// Clock modes.
+	public static final int REAL_TIME = 0;
+	public static final int SCALED = 1;
+	public static final int FREE_RUNNING = 2;
+	public static final int LOCKSTEP = 3;
+
+	// Default simulated time between ticks, in milliseconds.
+	public static final long DEFAULT_TICK_PERIOD = 2000;
+
+	private volatile int mode = REAL_TIME;
+	private volatile double speed = 1.0;
+	private volatile long tickPeriod = DEFAULT_TICK_PERIOD;
+	private volatile long tickNumber = 0;
+	private final LockstepBarrier barrier = new LockstepBarrier();
+
+	//
+	// realTime()
+	// ==========
+	// Runs the simulation in real time.
+	//
+	public void realTime() {
+		this.mode = REAL_TIME;
+		this.speed = 1.0;
+	}
+
+	//
+	// scaled()
+	// ========
+	// Runs the simulation faster or slower than real time.
+	//
+	// speed			Seconds of simulated time per second of real time,
+	//					such as 10 or 100.
+	//
+	public void scaled(double speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("Clock speed " + speed + " must be greater than zero");
+		}
+		this.mode = SCALED;
+		this.speed = speed;
+	}
+
+	//
+	// freeRunning()
+	// =============
+	// Runs the ticks back to back without waiting between them.
+	//
+	public void freeRunning() {
+		this.mode = FREE_RUNNING;
+		this.speed = 1.0;
+	}
+
+	//
+	// lockstep()
+	// ==========
+	// Runs each tick once every client taking part in the co-simulation has
+	// acknowledged the previous one. See barrier().
+	//
+	public void lockstep() {
+		this.mode = LOCKSTEP;
+		this.speed = 1.0;
+	}
+
+	//
+	// get barrier()
+	// =============
+	// Returns the barrier that the clients taking part in a lockstep
+	// co-simulation join and acknowledge each tick on.
+	//
+	public LockstepBarrier barrier() {
+		return this.barrier;
+	}
+
+	//
+	// get mode()
+	// ==========
+	public int mode() {
+		return this.mode;
+	}
+
+	//
+	// get speed()
+	// ===========
+	public double speed() {
+		return this.speed;
+	}
+
+	//
+	// set tickPeriod()
+	// ================
+	// Sets the simulated time between ticks, in milliseconds.
+	//
+	public void tickPeriod(long tickPeriod) {
+		if (tickPeriod <= 0) {
+			throw new IllegalArgumentException("Tick period " + tickPeriod + " ms must be greater than zero");
+		}
+		this.tickPeriod = tickPeriod;
+	}
+
+	//
+	// get tickPeriod()
+	// ================
+	// Returns the simulated time between ticks, in milliseconds.
+	//
+	public long tickPeriod() {
+		return this.tickPeriod;
+	}
+
+	//
+	// realTickPeriod()
+	// ================
+	// Returns the real time the scheduler waits between ticks, in
+	// nanoseconds, or 0 if the clock is free running or in lockstep.
+	//
+	public long realTickPeriod() {
+		switch (mode) {
+		case SCALED:
+			return Math.max(1, (long) (TimeUnit.MILLISECONDS.toNanos(tickPeriod) / speed));
+		case FREE_RUNNING:
+		case LOCKSTEP:
+			return 0;
+		default:
+			return TimeUnit.MILLISECONDS.toNanos(tickPeriod);
+		}
+	}
+
+	//
+	// set tickNumber()
+	// ================
+	// Called by the scheduler as each tick starts.
+	//
+	void tickNumber(long tickNumber) {
+		this.tickNumber = tickNumber;
+	}
+
+	//
+	// get tickNumber()
+	// ================
+	// Returns the number of the current tick, or 0 before the first tick.
+	//
+	public long tickNumber() {
+		return this.tickNumber;
+	}
+
+	//
+	// simulatedTime()
+	// ===============
+	// Returns the simulated time at the current tick, in milliseconds since
+	// the start of the simulation.
+	//
+	public long simulatedTime() {
+		return tickNumber * tickPeriod;
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		String modeName;
+
+		switch (mode) {
+		case SCALED:
+			modeName = "scaled x" + speed;
+			break;
+		case FREE_RUNNING:
+			modeName = "free running";
+			break;
+		case LOCKSTEP:
+			modeName = "lockstep";
+			break;
+		default:
+			modeName = "real time";
+		}
+		return "SimulationClock " + modeName + " period=" + tickPeriod + "ms tick=" + tickNumber +
+			   " time=" + simulatedTime() + "ms";
+	}
+}
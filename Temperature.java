@@ -0,0 +1,81 @@
+//
+// TEMPERATURE
+// ===========
+// Conversions for temperatures held as fixed-point centi-degrees.
+//
+// Documentation
+// =============
+// Temperatures are published by the model, sent to the clients and shown on
+// the HMI as whole numbers of hundredths of a degree, so 21.50 degrees is held
+// as 2150. Rounding and conversion between Celsius and Fahrenheit are then
+// integer arithmetic: they are exact, give the same result on every platform
+// and do not allocate. The thermal model itself still integrates in floating
+// point, since the heat that flows in a single tick is usually much less than
+// a hundredth of a degree, and its temperatures are rounded to centi-degrees
+// once per tick when they are published.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+public final class Temperature {
+	// Number of fixed-point units per degree, and the matching number of
+	// decimal places.
+	public static final int SCALE = 100;
+	public static final int DECIMALS = 2;
+
+	private Temperature() {
+	}
+
+	//
+	// fromDegrees()
+	// =============
+	// Rounds a temperature in degrees to centi-degrees.
+	//
+	public static int fromDegrees(float degrees) {
+		return Math.round(degrees * SCALE);
+	}
+
+	//
+	// toDegrees()
+	// ===========
+	public static float toDegrees(int centiDegrees) {
+		return (float) centiDegrees / SCALE;
+	}
+
+	//
+	// toFahrenheit()
+	// ==============
+	// Converts centi-degrees Celsius to centi-degrees Fahrenheit, rounded to
+	// the nearest hundredth. Nine fifths of a whole number of hundredths is
+	// always a whole number of fifths, so there are never any halves to
+	// round.
+	//
+	public static int toFahrenheit(int centiCelsius) {
+		return (int) Math.floorDiv((9L * centiCelsius) + 2, 5) + (32 * SCALE);
+	}
+
+	//
+	// wholeDegrees()
+	// ==============
+	// Returns the whole number part of a temperature, as shown on the HMI's
+	// LED panels. The fraction is dropped, so -5.5 degrees is shown as -5.
+	//
+	public static int wholeDegrees(int centiDegrees) {
+		return centiDegrees / SCALE;
+	}
+
+	//
+	// toString()
+	// ==========
+	// Formats a temperature with two decimal places, such as "-3.05".
+	//
+	public static String toString(int centiDegrees) {
+		int magnitude = Math.abs(centiDegrees);
+		char[] fraction = {'.', (char) ('0' + ((magnitude / 10) % 10)), (char) ('0' + (magnitude % 10))};
+
+		return ((centiDegrees < 0) ? "-" : "") + (magnitude / SCALE) + new String(fraction);
+	}
+}
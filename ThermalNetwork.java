@@ -0,0 +1,285 @@
+//
+// THERMAL NETWORK
+// ===============
+// Describes how heat flows between the zones of the simulated building and
+// between each zone and the outdoor air.
+//
+// Documentation
+// =============
+// Each zone is a node with a heat capacity, a conductance to the outdoor air
+// through its external walls, windows and ventilation, and the maximum power
+// of its HVAC unit. Zones that share a wall or a doorway are connected by an
+// edge with the conductance of that wall.
+//
+// Most zones only touch a few others, so the edges are held as a compressed
+// sparse row (CSR) graph once compile() has been called. The neighbours of
+// zone n are neighbour[rowStart[n]] to neighbour[rowStart[n + 1] - 1] and the
+// matching conductances are in the same positions of conductance[]. Each edge
+// is stored in both directions.
+//
+// The zones are grouped into partitions, such as the floors or buildings of a
+// campus, which the ThermalSolver integrates in parallel. Zones are added in
+// partition order: call startPartition() before adding the zones of each
+// floor. Large partitions are split further into chunks of at most
+// MAX_CHUNK_SIZE zones so that the work is spread evenly over the cores.
+//
+// Zones must be added in the same order as they are added to the ZoneStore,
+// so that both use the same zone ids. Units are SI: J/K for heat capacity,
+// W/K for conductance and W for power.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+import java.util.Arrays;
+
+public class ThermalNetwork {
+	// Largest number of zones integrated by one fork/join task.
+	public static final int MAX_CHUNK_SIZE = 4096;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private float outdoorTemperature = (float) 12.0;
+
+	// Per zone parameters.
+	private float[] heatCapacity = new float[INITIAL_CAPACITY];
+	private float[] outdoorConductance = new float[INITIAL_CAPACITY];
+	private float[] hvacPower = new float[INITIAL_CAPACITY];
+	private int zoneCount = 0;
+
+	// Edges as added, before they are compiled.
+	private int[] edgeFrom = new int[INITIAL_CAPACITY];
+	private int[] edgeTo = new int[INITIAL_CAPACITY];
+	private float[] edgeConductance = new float[INITIAL_CAPACITY];
+	private int edgeCount = 0;
+
+	// First zone of each partition.
+	private int[] partitionStart = new int[INITIAL_CAPACITY];
+	private int partitionCount = 0;
+
+	// Compiled graph.
+	private int[] rowStart = null;
+	private int[] neighbour = null;
+	private float[] conductance = null;
+	private int[] chunkStart = null;
+	private float maxRate = 0;
+
+	//
+	// startPartition()
+	// ================
+	// Starts a new partition, such as a floor or building. The zones added
+	// after this belong to it.
+	//
+	public void startPartition() {
+		if ((partitionCount > 0) && (partitionStart[partitionCount - 1] == zoneCount)) {
+			return;
+		}
+		if (partitionCount == partitionStart.length) {
+			partitionStart = Arrays.copyOf(partitionStart, partitionCount * 2);
+		}
+		partitionStart[partitionCount++] = zoneCount;
+		rowStart = null;
+	}
+
+	//
+	// addZone()
+	// =========
+	// heatCapacity			Heat needed to warm the zone by one degree, J/K.
+	//
+	// outdoorConductance	Heat lost to the outdoor air per degree of
+	//						difference, W/K.
+	//
+	// hvacPower			Heating or cooling power of the zone's HVAC unit at
+	//						full output, W.
+	//
+	// returns				The id of the new zone.
+	//
+	public int addZone(float heatCapacity, float outdoorConductance, float hvacPower) {
+		if (!(heatCapacity > 0)) {
+			throw new IllegalArgumentException("Heat capacity " + heatCapacity + " must be greater than zero");
+		}
+		if (partitionCount == 0) {
+			startPartition();
+		}
+		if (zoneCount == this.heatCapacity.length) {
+			int capacity = zoneCount * 2;
+			this.heatCapacity = Arrays.copyOf(this.heatCapacity, capacity);
+			this.outdoorConductance = Arrays.copyOf(this.outdoorConductance, capacity);
+			this.hvacPower = Arrays.copyOf(this.hvacPower, capacity);
+		}
+		this.heatCapacity[zoneCount] = heatCapacity;
+		this.outdoorConductance[zoneCount] = outdoorConductance;
+		this.hvacPower[zoneCount] = hvacPower;
+		rowStart = null;
+		return zoneCount++;
+	}
+
+	//
+	// connect()
+	// =========
+	// Connects two zones that exchange heat through a shared wall, floor or
+	// doorway.
+	//
+	// conductance		Heat flow per degree of difference, W/K.
+	//
+	public void connect(int zone1, int zone2, float conductance) {
+		if ((zone1 < 0) || (zone1 >= zoneCount) || (zone2 < 0) || (zone2 >= zoneCount) || (zone1 == zone2)) {
+			throw new IllegalArgumentException("Cannot connect zone " + zone1 + " to zone " + zone2);
+		}
+		if (edgeCount == edgeFrom.length) {
+			int capacity = edgeCount * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeConductance = Arrays.copyOf(edgeConductance, capacity);
+		}
+		edgeFrom[edgeCount] = zone1;
+		edgeTo[edgeCount] = zone2;
+		edgeConductance[edgeCount] = conductance;
+		edgeCount++;
+		rowStart = null;
+	}
+
+	//
+	// compile()
+	// =========
+	// Builds the compressed sparse row graph and the chunks of work from the
+	// zones and edges added so far. The solver calls this itself if the
+	// network has changed since it was last compiled.
+	//
+	public void compile() {
+		int[] start = new int[zoneCount + 1];
+		int[] next = new int[zoneCount];
+		int[] adjacent = new int[2 * edgeCount];
+		float[] adjacentConductance = new float[2 * edgeCount];
+
+		// Count the edges of each zone, then turn the counts into the
+		// position of each zone's first edge.
+		for (int i = 0; i < edgeCount; i++) {
+			start[edgeFrom[i] + 1]++;
+			start[edgeTo[i] + 1]++;
+		}
+		for (int zone = 0; zone < zoneCount; zone++) {
+			start[zone + 1] += start[zone];
+			next[zone] = start[zone];
+		}
+		for (int i = 0; i < edgeCount; i++) {
+			adjacent[next[edgeFrom[i]]] = edgeTo[i];
+			adjacentConductance[next[edgeFrom[i]]++] = edgeConductance[i];
+			adjacent[next[edgeTo[i]]] = edgeFrom[i];
+			adjacentConductance[next[edgeTo[i]]++] = edgeConductance[i];
+		}
+
+		// The fastest rate at which any zone approaches its surroundings,
+		// used by the solver to choose a stable time step.
+		float rate;
+		maxRate = 0;
+		for (int zone = 0; zone < zoneCount; zone++) {
+			rate = outdoorConductance[zone];
+			for (int i = start[zone]; i < start[zone + 1]; i++) {
+				rate += adjacentConductance[i];
+			}
+			rate = rate / heatCapacity[zone];
+			if (rate > maxRate) {
+				maxRate = rate;
+			}
+		}
+
+		// Split the partitions into chunks of work.
+		int chunks = 0;
+		int[] chunk = new int[partitionCount + (zoneCount / MAX_CHUNK_SIZE) + 1];
+		for (int p = 0; p < partitionCount; p++) {
+			int first = partitionStart[p];
+			int last = (p + 1 < partitionCount) ? partitionStart[p + 1] : zoneCount;
+			for (int zone = first; zone < last; zone += MAX_CHUNK_SIZE) {
+				chunk[chunks++] = zone;
+			}
+		}
+		chunk[chunks] = zoneCount;
+
+		neighbour = adjacent;
+		conductance = adjacentConductance;
+		chunkStart = Arrays.copyOf(chunk, chunks + 1);
+		rowStart = start;
+	}
+
+	//
+	// isCompiled()
+	// ============
+	// Returns false if zones or edges have been added since compile().
+	//
+	public boolean isCompiled() {
+		return rowStart != null;
+	}
+
+	//
+	// get outdoorTemperature()
+	// ========================
+	public float outdoorTemperature() {
+		return this.outdoorTemperature;
+	}
+
+	//
+	// set outdoorTemperature()
+	// ========================
+	public void outdoorTemperature(float outdoorTemperature) {
+		this.outdoorTemperature = outdoorTemperature;
+	}
+
+	//
+	// get zoneCount()
+	// ===============
+	public int zoneCount() {
+		return this.zoneCount;
+	}
+
+	//
+	// get edgeCount()
+	// ===============
+	public int edgeCount() {
+		return this.edgeCount;
+	}
+
+	//
+	// get partitionCount()
+	// ====================
+	public int partitionCount() {
+		return this.partitionCount;
+	}
+
+	//
+	// Compiled graph accessors for the solver.
+	// ========================================
+	int[] rowStart() {
+		return this.rowStart;
+	}
+
+	int[] neighbour() {
+		return this.neighbour;
+	}
+
+	float[] conductance() {
+		return this.conductance;
+	}
+
+	int[] chunkStart() {
+		return this.chunkStart;
+	}
+
+	float maxRate() {
+		return this.maxRate;
+	}
+
+	float[] heatCapacity() {
+		return this.heatCapacity;
+	}
+
+	float[] outdoorConductance() {
+		return this.outdoorConductance;
+	}
+
+	float[] hvacPower() {
+		return this.hvacPower;
+	}
+}
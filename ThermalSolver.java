@@ -0,0 +1,243 @@
+//
+// THERMAL SOLVER
+// ==============
+// Calculates the new temperature of every zone each tick from the heat that
+// flows between neighbouring zones, to and from the outdoor air and from each
+// zone's HVAC unit.
+//
+// Documentation
+// =============
+// For each zone i, the rate of change of temperature is:
+//
+//   C[i] dT[i]/dt = sum of G[i][j] (T[j] - T[i]) over the neighbours j
+//                 + Gout[i] (Tout - T[i])
+//                 + actuator[i] P[i]
+//
+// where C is the heat capacity, G the conductance of each shared wall, Gout
+// the conductance to the outdoor air, Tout the outdoor temperature and P the
+// power of the HVAC unit. These are integrated with explicit Euler steps. If
+// a tick is longer than the network can be integrated stably in one step, it
+// is split into several equal sub-steps.
+//
+// Each step reads the temperatures of the previous step and writes the new
+// temperatures to a second column, which is then swapped into the ZoneStore.
+// The zones are therefore independent within a step, so the chunks of the
+// ThermalNetwork are integrated in parallel by fork/join tasks. Every zone
+// sums its neighbours in the same order whatever the number of threads, so
+// the results are identical with any parallelism.
+//
+// Several buildings simulated in the same JVM can share one ForkJoinPool by
+// passing it to each of their solvers, rather than each starting a pool of
+// its own. A network small enough to fit in a single chunk is always
+// integrated on the calling thread, since there is nothing to split.
+//
+// The time taken by each step is recorded so that it can be compared with
+// the tick period.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added the constructor taking a shared pool. Single chunk
+//            networks are integrated on the calling thread.
+//
+package HVACsim;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+public class ThermalSolver {
+	// Largest fraction of the gap to its surroundings that any zone may close
+	// in one sub-step. Explicit Euler is stable below 1.0.
+	private static final float MAX_STEP_RATE = (float) 0.5;
+
+	private final ThermalNetwork network;
+	private final ForkJoinPool pool;
+
+	// Column the new temperatures are written to.
+	private float[] next = new float[0];
+
+	// Set for the duration of each sub-step.
+	private float[] current;
+	private float[] actuator;
+	private float subStep;
+
+	// Statistics for this solver.
+	private volatile long steps = 0;
+	private volatile long lastStepTime = 0;
+	private volatile long maxStepTime = 0;
+
+	//
+	// ThermalSolver()
+	// ===============
+	// network			The thermal network of the building.
+	//
+	// parallelism		Number of threads to integrate the chunks on. With 1,
+	//					the chunks are integrated on the calling thread.
+	//
+	public ThermalSolver(ThermalNetwork network, int parallelism) {
+		this(network, newPool(parallelism));
+	}
+
+	//
+	// ThermalSolver()
+	// ===============
+	// network			The thermal network of the building.
+	//
+	// pool				Pool to integrate the chunks on, which can be shared
+	//					with the solvers of other buildings. With null, the
+	//					chunks are integrated on the calling thread.
+	//
+	public ThermalSolver(ThermalNetwork network, ForkJoinPool pool) {
+		this.network = network;
+		this.pool = pool;
+	}
+
+	//
+	// newPool()
+	// =========
+	// Creates a pool for one or more solvers to integrate their chunks on.
+	//
+	// returns			The pool, or null if parallelism is 1 or less, in
+	//					which case the chunks are integrated on the calling
+	//					thread.
+	//
+	public static ForkJoinPool newPool(int parallelism) {
+		return (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+	}
+
+	//
+	// step()
+	// ======
+	// Advances the temperatures in the zone store by one tick, using the
+	// actuator outputs already in the store.
+	//
+	// seconds			Simulated time covered by the tick.
+	//
+	public void step(ZoneStore zones, float seconds) {
+		long startTime = System.nanoTime();
+		int zoneCount = zones.zoneCount();
+		int subSteps;
+
+		if (!network.isCompiled()) {
+			network.compile();
+		}
+		if (zoneCount != network.zoneCount()) {
+			throw new IllegalStateException("Thermal network has " + network.zoneCount() + " zones but the zone store has " + zoneCount);
+		}
+		if (next.length < zones.temperatures().length) {
+			next = new float[zones.temperatures().length];
+		}
+
+		subSteps = Math.max(1, (int) Math.ceil((seconds * network.maxRate()) / MAX_STEP_RATE));
+		subStep = seconds / subSteps;
+		actuator = zones.actuators();
+		for (int i = 0; i < subSteps; i++) {
+			current = zones.temperatures();
+			if ((pool == null) || (network.chunkStart().length <= 2)) {
+				integrate(0, network.chunkStart().length - 1);
+			} else {
+				pool.invoke(new ChunkTask(0, network.chunkStart().length - 1));
+			}
+			next = zones.temperatures(next);
+		}
+		current = null;
+		actuator = null;
+
+		lastStepTime = System.nanoTime() - startTime;
+		if (lastStepTime > maxStepTime) {
+			maxStepTime = lastStepTime;
+		}
+		steps++;
+	}
+
+	//
+	// integrate()
+	// ===========
+	// Calculates the next temperatures of the zones in a range of chunks.
+	//
+	private void integrate(int firstChunk, int endChunk) {
+		int[] chunkStart = network.chunkStart();
+		int[] rowStart = network.rowStart();
+		int[] neighbour = network.neighbour();
+		float[] conductance = network.conductance();
+		float[] heatCapacity = network.heatCapacity();
+		float[] outdoorConductance = network.outdoorConductance();
+		float[] hvacPower = network.hvacPower();
+		float outdoorTemperature = network.outdoorTemperature();
+		float temperature;
+		float heatFlow;
+
+		for (int zone = chunkStart[firstChunk]; zone < chunkStart[endChunk]; zone++) {
+			temperature = current[zone];
+			heatFlow = outdoorConductance[zone] * (outdoorTemperature - temperature);
+			for (int i = rowStart[zone]; i < rowStart[zone + 1]; i++) {
+				heatFlow += conductance[i] * (current[neighbour[i]] - temperature);
+			}
+			heatFlow += actuator[zone] * hvacPower[zone];
+			next[zone] = temperature + ((heatFlow * subStep) / heatCapacity[zone]);
+		}
+	}
+
+	//
+	// ChunkTask
+	// =========
+	// Integrates a range of chunks, splitting it in half until each task
+	// has a single chunk.
+	//
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int firstChunk;
+		private final int endChunk;
+
+		ChunkTask(int firstChunk, int endChunk) {
+			this.firstChunk = firstChunk;
+			this.endChunk = endChunk;
+		}
+
+		@Override
+		protected void compute() {
+			if (endChunk - firstChunk <= 1) {
+				integrate(firstChunk, endChunk);
+			} else {
+				int middle = (firstChunk + endChunk) >>> 1;
+				invokeAll(new ChunkTask(firstChunk, middle), new ChunkTask(middle, endChunk));
+			}
+		}
+	}
+
+	//
+	// get steps()
+	// ===========
+	public long steps() {
+		return this.steps;
+	}
+
+	//
+	// get lastStepTime()
+	// ==================
+	// Returns the real time taken by the last step, in microseconds.
+	//
+	public long lastStepTime() {
+		return TimeUnit.NANOSECONDS.toMicros(this.lastStepTime);
+	}
+
+	//
+	// get maxStepTime()
+	// =================
+	// Returns the longest real time taken by a step, in microseconds.
+	//
+	public long maxStepTime() {
+		return TimeUnit.NANOSECONDS.toMicros(this.maxStepTime);
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "ThermalSolver zones=" + network.zoneCount() + " edges=" + network.edgeCount() +
+			   " partitions=" + network.partitionCount() + " steps=" + steps +
+			   " last=" + lastStepTime() + "us max=" + maxStepTime() + "us";
+	}
+}
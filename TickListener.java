@@ -0,0 +1,23 @@
+//
+// SIMULATION TICK LISTENER
+// ========================
+// Implemented by anything that advances the simulation model each time the
+// TickScheduler ticks.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+//
+package HVACsim;
+
+public interface TickListener {
+	//
+	// tick()
+	// ======
+	// Called on the scheduler's thread once per tick.
+	//
+	// tickNumber		Number of the tick, counting from 1. Ticks that were
+	//					missed are skipped, so the numbers can jump.
+	//
+	void tick(long tickNumber);
+}
@@ -0,0 +1,246 @@
+//
+// SIMULATION TICK SCHEDULER
+// =========================
+// Advances the simulation at a fixed rate by calling its TickListeners once
+// per tick.
+//
+// Documentation
+// =============
+// The scheduler parks its thread until the next tick is due, so an idle
+// simulation uses no CPU between ticks. Time is measured with System.nanoTime()
+// rather than the wall clock, so it is not affected by the system clock being
+// changed or adjusted by NTP.
+//
+// Tick n is due at startTime + (n * tickPeriod). The deadlines are calculated
+// from the start time rather than from when the previous tick finished, so the
+// time spent handling each tick and any delay in waking up do not accumulate
+// as drift.
+//
+// How long a tick period lasts in real time is set by the SimulationClock,
+// which the scheduler updates with the number of each tick before calling
+// the listeners. When the clock is free running the ticks are run back to
+// back without parking, and none are counted as late or missed. In lockstep
+// mode each tick waits on the clock's LockstepBarrier instead, and the
+// participants are told once it has been calculated.
+//
+// A tick that starts more than the late tolerance after its deadline is
+// counted as late. If a tick is so late that one or more later deadlines have
+// also passed, for example because a listener took longer than a tick period
+// or the machine was suspended, those ticks are counted as missed and skipped
+// rather than being run back to back to catch up. The following tick is then
+// scheduled on the next deadline, keeping the original tick spacing. The
+// tick number passed to the listeners jumps over the missed ticks, so a
+// listener can tell how much simulated time has passed since its last tick.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 The tick period and pacing now come from a SimulationClock
+//            so that the simulation can run faster than real time.
+// 17.10.2026 Added the lockstep mode.
+// 17.10.2026 Documented how listeners can tell that ticks were missed.
+//
+package HVACsim;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class TickScheduler implements Runnable {
+	// Largest amount by which a tick may start after its deadline without
+	// being counted as late. Shorter tick periods use a tenth of the period.
+	private static final long MAX_LATE_TOLERANCE = TimeUnit.MILLISECONDS.toNanos(10);
+
+	// Flag to silence the status messages written to the console.
+	private static boolean isSilent = true;
+
+	private final CopyOnWriteArrayList<TickListener> listeners = new CopyOnWriteArrayList<TickListener>();
+	private final SimulationClock clock;
+	private volatile boolean running = false;
+	private volatile Thread thread = null;
+
+	// Statistics for this scheduler.
+	private volatile long ticks = 0;
+	private volatile long lateTicks = 0;
+	private volatile long missedTicks = 0;
+	private volatile long maxLateness = 0;
+
+	//
+	// TickScheduler()
+	// ===============
+	// clock			The clock that sets the tick period and is advanced by
+	//					each tick.
+	//
+	public TickScheduler(SimulationClock clock) {
+		this.clock = clock;
+	}
+
+	//
+	// get clock()
+	// ===========
+	public SimulationClock clock() {
+		return this.clock;
+	}
+
+	//
+	// addListener()
+	// =============
+	public void addListener(TickListener listener) {
+		listeners.add(listener);
+	}
+
+	//
+	// removeListener()
+	// ================
+	public void removeListener(TickListener listener) {
+		listeners.remove(listener);
+	}
+
+	//
+	// run()
+	// =====
+	// Runs the scheduler on the calling thread until stop() is called or the
+	// thread is interrupted.
+	//
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+		running = true;
+		say("TickScheduler started. " + clock);
+
+		// The tick period is read once, so the clock must not be changed
+		// while the scheduler is running.
+		boolean lockstep = (clock.mode() == SimulationClock.LOCKSTEP);
+		long tickPeriod = clock.realTickPeriod();
+		long lateTolerance = Math.min(MAX_LATE_TOLERANCE, tickPeriod / 10);
+		long startTime = System.nanoTime();
+		long tickNumber = 1;
+		long deadline = startTime + tickPeriod;
+		long now;
+		long lateness;
+
+		while (running && !thread.isInterrupted()) {
+			if (lockstep) {
+				try {
+					if (!clock.barrier().awaitStep()) {
+						continue;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			} else if (tickPeriod > 0) {
+				// parkNanos() can return early, so keep waiting until the
+				// deadline has actually passed.
+				while (running && ((now = System.nanoTime()) - deadline) < 0) {
+					LockSupport.parkNanos(this, deadline - now);
+					if (thread.isInterrupted()) {
+						running = false;
+					}
+				}
+				if (!running) {
+					break;
+				}
+
+				lateness = System.nanoTime() - deadline;
+				if (lateness >= tickPeriod) {
+					long skipped = lateness / tickPeriod;
+					missedTicks += skipped;
+					tickNumber += skipped;
+					lateness -= skipped * tickPeriod;
+					say("TickScheduler missed " + skipped + " ticks");
+				}
+				if (lateness > lateTolerance) {
+					lateTicks++;
+				}
+				if (lateness > maxLateness) {
+					maxLateness = lateness;
+				}
+			}
+
+			clock.tickNumber(tickNumber);
+			for (TickListener listener : listeners) {
+				try {
+					listener.tick(tickNumber);
+				} catch (RuntimeException e) {
+					say("TickScheduler exception caught in tick " + tickNumber + ". " + e.getMessage());
+				}
+			}
+			if (lockstep) {
+				clock.barrier().completeStep(tickNumber);
+			}
+			ticks++;
+			tickNumber++;
+			deadline = startTime + (tickNumber * tickPeriod);
+		}
+		running = false;
+		say("TickScheduler stopped. " + this);
+	}
+
+	//
+	// stop()
+	// ======
+	// Stops the scheduler after the current tick, if any, has finished.
+	//
+	public void stop() {
+		running = false;
+		Thread current = thread;
+		if (current != null) {
+			LockSupport.unpark(current);
+		}
+		clock.barrier().wakeUp();
+	}
+
+	//
+	// get ticks()
+	// ===========
+	public long ticks() {
+		return this.ticks;
+	}
+
+	//
+	// get lateTicks()
+	// ===============
+	public long lateTicks() {
+		return this.lateTicks;
+	}
+
+	//
+	// get missedTicks()
+	// =================
+	public long missedTicks() {
+		return this.missedTicks;
+	}
+
+	//
+	// get maxLateness()
+	// =================
+	// Returns the latest that any tick has started after its deadline, in
+	// microseconds.
+	//
+	public long maxLateness() {
+		return TimeUnit.NANOSECONDS.toMicros(this.maxLateness);
+	}
+
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "TickScheduler ticks=" + ticks + " late=" + lateTicks +
+			   " missed=" + missedTicks + " maxLateness=" + maxLateness() + "us";
+	}
+
+	//
+	// say()
+	// =====
+	// Output a console message for use during debugging. This
+	// can be turned off by setting the private boolean variable
+	// isSilent true.
+	//
+	private static void say(String whatToSay){
+		if(!isSilent) {
+			System.out.println(whatToSay);
+		}
+	}
+}
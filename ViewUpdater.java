@@ -0,0 +1,245 @@
+//
+// VIEW UPDATER
+// ============
+// Passes the updates for an EnvironmentView that must only be changed on the
+// Swing event dispatch thread (EDT), such as the HMIui, from any thread to
+// the EDT, at no more than a fixed number of frames per second.
+//
+// Documentation
+// =============
+// The Environment updates its view from the environment thread on every tick
+// and from the server worker threads whenever a client sends a temperature to
+// display. Swing components must only be changed on the EDT, and every change
+// to one asks for it to be repainted, so a busy simulation could keep the EDT
+// repainting the same widget faster than anyone can see it.
+//
+// Instead, each show method stores the latest value for its widget and zone
+// in a slot of its own and marks that slot as dirty. The first update after a
+// frame asks the EDT to run the frame task, which applies the latest value of
+// every dirty slot to the view in one go. If the last frame was less than a
+// frame period ago, the task waits on a Swing Timer until the period is up.
+// Updates that arrive before the frame is drawn simply replace the value
+// waiting in the slot, so however many updates there are, each widget of
+// each zone is changed at most once per frame and only its latest value is
+// drawn. Updates for different zones never replace each other. The few
+// updates for zones beyond MAX_ZONES are passed to the EDT one at a time
+// instead.
+//
+// Posting an update takes no locks and never waits for the EDT.
+//
+// The button events are read straight from the view.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Passes the view's button event queue through.
+// 17.10.2026 The latest values are now kept per widget and zone, so that an
+//            update for one zone no longer hides one for another.
+//
+package HVACsim;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+public class ViewUpdater implements EnvironmentView {
+	// Frame rate of an updater created without one.
+	public static final int DEFAULT_FRAME_RATE = 30;
+	
+	// The widgets of the view. Each has a slot for each zone, holding its
+	// latest value and a dirty flag.
+	private static final int ZONE_TEMPERATURE = 0;
+	private static final int ROOM_TEMPERATURE = 1;
+	private static final int SET_TEMPERATURE = 2;
+	private static final int WIDGET_COUNT = 3;
+	
+	// Number of zones of each widget that have a slot.
+	private static final int MAX_ZONES = 32;
+	
+	private final EnvironmentView view;
+	private final long framePeriod;
+	
+	// The latest value and dirty flag of each widget and zone, indexed by
+	// slot().
+	private final AtomicIntegerArray latest = new AtomicIntegerArray(WIDGET_COUNT * MAX_ZONES);
+	private final AtomicIntegerArray dirty = new AtomicIntegerArray(WIDGET_COUNT * MAX_ZONES);
+	private final AtomicBoolean frameRequested = new AtomicBoolean(false);
+	
+	// Only used on the EDT.
+	private final Timer frameTimer;
+	private long lastFrameTime;
+	
+	// Statistics for this updater.
+	private final LongAdder updates = new LongAdder();
+	private volatile long frames = 0;
+	
+	// Runs a frame on the EDT.
+	private final Runnable frameTask = new Runnable() {
+		public void run() {
+			drawFrame();
+		}
+	};
+	
+	//
+	// ViewUpdater()
+	// =============
+	public ViewUpdater(EnvironmentView view) {
+		this(view, DEFAULT_FRAME_RATE);
+	}
+	
+	//
+	// ViewUpdater()
+	// =============
+	// view				The view to update on the EDT.
+	//
+	// frameRate		Largest number of frames to draw per second.
+	//
+	public ViewUpdater(EnvironmentView view, int frameRate) {
+		this.view = view;
+		this.framePeriod = TimeUnit.SECONDS.toNanos(1) / Math.max(1, frameRate);
+		this.lastFrameTime = System.nanoTime() - framePeriod;
+		this.frameTimer = new Timer(0, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				drawFrame();
+			}
+		});
+		this.frameTimer.setRepeats(false);
+	}
+	
+	@Override
+	public ButtonEventQueue buttonEvents() {
+		return view.buttonEvents();
+	}
+	
+	@Override
+	public void showZoneTemperature(int zone, int temperature) {
+		post(ZONE_TEMPERATURE, zone, temperature);
+	}
+	
+	@Override
+	public void showRoomTemperature(int zone, int displayTemperature) {
+		post(ROOM_TEMPERATURE, zone, displayTemperature);
+	}
+	
+	@Override
+	public void showSetTemperature(int zone, int displayTemperature) {
+		post(SET_TEMPERATURE, zone, displayTemperature);
+	}
+	
+	//
+	// post()
+	// ======
+	// Stores the latest value of a widget for a zone, marks its slot as
+	// dirty and, if there is not one already waiting, asks the EDT for a
+	// frame. The value is stored before the slot is marked, so a frame that
+	// finds the slot dirty always sees the value.
+	//
+	private void post(final int widget, final int zone, final int value) {
+		updates.increment();
+		if ((zone < 0) || (zone >= MAX_ZONES)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					apply(widget, zone, value);
+				}
+			});
+			return;
+		}
+		
+		int slot = slot(widget, zone);
+		latest.set(slot, value);
+		dirty.set(slot, 1);
+		if (frameRequested.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(frameTask);
+		}
+	}
+	
+	//
+	// slot()
+	// ======
+	private static int slot(int widget, int zone) {
+		return (widget * MAX_ZONES) + zone;
+	}
+	
+	//
+	// drawFrame()
+	// ===========
+	// Runs on the EDT. Waits until a frame period has passed since the last
+	// frame, then applies the latest value of every dirty slot to the view.
+	// The frame request is cleared before the slots are checked, so an
+	// update posted while the frame is being drawn asks for another one.
+	//
+	private void drawFrame() {
+		long now = System.nanoTime();
+		long wait = (lastFrameTime + framePeriod) - now;
+		boolean drawn = false;
+		
+		if (wait > 0) {
+			frameTimer.setInitialDelay((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+			frameTimer.restart();
+			return;
+		}
+		lastFrameTime = now;
+		frameRequested.set(false);
+		for (int widget = 0; widget < WIDGET_COUNT; widget++) {
+			for (int zone = 0; zone < MAX_ZONES; zone++) {
+				int slot = slot(widget, zone);
+				if (dirty.getAndSet(slot, 0) != 0) {
+					apply(widget, zone, latest.get(slot));
+					drawn = true;
+				}
+			}
+		}
+		if (drawn) {
+			frames++;
+		}
+	}
+	
+	//
+	// apply()
+	// =======
+	private void apply(int widget, int zone, int value) {
+		switch (widget) {
+			case ZONE_TEMPERATURE:
+				view.showZoneTemperature(zone, value);
+				break;
+			case ROOM_TEMPERATURE:
+				view.showRoomTemperature(zone, value);
+				break;
+			case SET_TEMPERATURE:
+				view.showSetTemperature(zone, value);
+				break;
+		}
+	}
+	
+	//
+	// get updates()
+	// =============
+	// Returns the number of updates that have been posted.
+	//
+	public long updates() {
+		return updates.sum();
+	}
+	
+	//
+	// get frames()
+	// ============
+	// Returns the number of frames that have been drawn.
+	//
+	public long frames() {
+		return this.frames;
+	}
+	
+	//
+	// toString()
+	// ==========
+	@Override
+	public String toString() {
+		return "ViewUpdater updates=" + updates() + " frames=" + frames +
+			   " framePeriod=" + TimeUnit.NANOSECONDS.toMillis(framePeriod) + "ms";
+	}
+}
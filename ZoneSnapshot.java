@@ -0,0 +1,117 @@
+//
+// ZONE SNAPSHOT
+// =============
+// An immutable copy of the state of every zone as it was at the end of one
+// tick.
+//
+// Documentation
+// =============
+// The ZoneStore is updated in place by the simulation thread while the tick
+// is calculated, so other threads cannot safely read it. Instead, at the end
+// of each tick the Environment takes a snapshot of the store and publishes it
+// by writing it to a volatile field. The server threads handling requests
+// read that field once and then read the zones from the snapshot they got.
+//
+// This gives the readers:
+//
+//   - a consistent view, since every zone in a snapshot comes from the same
+//     tick, however many zones a request reads;
+//
+//   - no waiting, since the read path takes no locks and the snapshot never
+//     changes once it has been published;
+//
+//   - no copying per request, since the columns are copied once per tick by
+//     the simulation thread, not by each reader.
+//
+// Temperatures and set temperatures are rounded to fixed-point centi-degrees
+// when the snapshot is taken. See Temperature.
+//
+// A reader that still holds an older snapshot keeps it alive until it has
+// finished with it, and the garbage collector then reclaims it.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Temperatures are held as fixed-point centi-degrees.
+//
+package HVACsim;
+
+import java.util.Arrays;
+
+public final class ZoneSnapshot {
+	private final long tickNumber;
+	private final long simulatedTime;
+	private final int zoneCount;
+	private final int[] temperature;
+	private final int[] setpoint;
+	private final float[] actuator;
+
+	//
+	// ZoneSnapshot()
+	// ==============
+	// Copies the first zoneCount entries of each column, rounding the
+	// temperatures to centi-degrees.
+	//
+	ZoneSnapshot(long tickNumber, long simulatedTime, int zoneCount, float[] temperature, float[] setpoint, float[] actuator) {
+		this.tickNumber = tickNumber;
+		this.simulatedTime = simulatedTime;
+		this.zoneCount = zoneCount;
+		this.temperature = new int[zoneCount];
+		this.setpoint = new int[zoneCount];
+		this.actuator = Arrays.copyOf(actuator, zoneCount);
+		for (int zone = 0; zone < zoneCount; zone++) {
+			this.temperature[zone] = Temperature.fromDegrees(temperature[zone]);
+			this.setpoint[zone] = Temperature.fromDegrees(setpoint[zone]);
+		}
+	}
+
+	//
+	// get tickNumber()
+	// ================
+	// Returns the tick the snapshot was taken at, or 0 for the initial state.
+	//
+	public long tickNumber() {
+		return this.tickNumber;
+	}
+
+	//
+	// get simulatedTime()
+	// ===================
+	// Returns the simulated time the snapshot was taken at, in milliseconds.
+	//
+	public long simulatedTime() {
+		return this.simulatedTime;
+	}
+
+	//
+	// get zoneCount()
+	// ===============
+	public int zoneCount() {
+		return this.zoneCount;
+	}
+
+	//
+	// get temperature()
+	// =================
+	// Returns the temperature of a zone in centi-degrees Celsius.
+	//
+	public int temperature(int zone) {
+		return temperature[zone];
+	}
+
+	//
+	// get setpoint()
+	// ==============
+	// Returns the set temperature of a zone in centi-degrees Celsius.
+	//
+	public int setpoint(int zone) {
+		return setpoint[zone];
+	}
+
+	//
+	// get actuator()
+	// ==============
+	public float actuator(int zone) {
+		return actuator[zone];
+	}
+}
@@ -0,0 +1,214 @@
+//
+// ZONE STORE
+// ==========
+// Holds the state of every zone in the simulated building, indexed by zone id.
+//
+// Documentation
+// =============
+// The state is held as a struct of arrays: one primitive column per property,
+// with the state of zone n at index n of each column. A campus of thousands of
+// zones is therefore held in a handful of arrays rather than one object per
+// zone, nothing is boxed, and a pass over one property of every zone, as the
+// model does each tick, reads contiguous memory.
+//
+// The columns are:
+//
+//   temperature		Air temperature of the zone in degrees Celsius.
+//
+//   setpoint			Temperature the zone controller is trying to hold, in
+//						degrees Celsius.
+//
+//   actuator			Output of the zone's HVAC unit, from -1.0 for full
+//						cooling through 0.0 for off to 1.0 for full heating.
+//
+// Zones are numbered from 0 in the order they are added. Looking up or
+// updating a zone is a single array access. The columns grow as zones are
+// added, so the initial capacity only needs to be an estimate.
+//
+// The store is owned by the simulation thread, which is the only thread that
+// should add zones, update them or read them while the simulation is running.
+// Other threads read the ZoneSnapshot taken at the end of each tick.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 Added snapshot().
+//
+package HVACsim;
+
+import java.util.Arrays;
+
+public class ZoneStore {
+	// Capacity of a store created without one.
+	public static final int DEFAULT_CAPACITY = 16;
+
+	private float[] temperature;
+	private float[] setpoint;
+	private float[] actuator;
+	private int zoneCount = 0;
+
+	//
+	// ZoneStore()
+	// ===========
+	public ZoneStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	//
+	// ZoneStore()
+	// ===========
+	// capacity			Number of zones to allocate space for.
+	//
+	public ZoneStore(int capacity) {
+		capacity = Math.max(1, capacity);
+		temperature = new float[capacity];
+		setpoint = new float[capacity];
+		actuator = new float[capacity];
+	}
+
+	//
+	// addZone()
+	// =========
+	// Adds a zone with its HVAC unit turned off.
+	//
+	// returns			The id of the new zone.
+	//
+	public int addZone(float temperature, float setpoint) {
+		if (zoneCount == this.temperature.length) {
+			grow(zoneCount * 2);
+		}
+		this.temperature[zoneCount] = temperature;
+		this.setpoint[zoneCount] = setpoint;
+		this.actuator[zoneCount] = 0;
+		return zoneCount++;
+	}
+
+	//
+	// get zoneCount()
+	// ===============
+	public int zoneCount() {
+		return this.zoneCount;
+	}
+
+	//
+	// get temperature()
+	// =================
+	public float temperature(int zone) {
+		return temperature[checkZone(zone)];
+	}
+
+	//
+	// set temperature()
+	// =================
+	public void temperature(int zone, float temperature) {
+		this.temperature[checkZone(zone)] = temperature;
+	}
+
+	//
+	// get setpoint()
+	// ==============
+	public float setpoint(int zone) {
+		return setpoint[checkZone(zone)];
+	}
+
+	//
+	// set setpoint()
+	// ==============
+	public void setpoint(int zone, float setpoint) {
+		this.setpoint[checkZone(zone)] = setpoint;
+	}
+
+	//
+	// get actuator()
+	// ==============
+	public float actuator(int zone) {
+		return actuator[checkZone(zone)];
+	}
+
+	//
+	// set actuator()
+	// ==============
+	public void actuator(int zone, float actuator) {
+		this.actuator[checkZone(zone)] = actuator;
+	}
+
+	//
+	// snapshot()
+	// ==========
+	// Returns an immutable copy of the state of every zone, for other
+	// threads to read.
+	//
+	public ZoneSnapshot snapshot(long tickNumber, long simulatedTime) {
+		return new ZoneSnapshot(tickNumber, simulatedTime, zoneCount, temperature, setpoint, actuator);
+	}
+
+	//
+	// temperatures()
+	// ==============
+	// Returns the temperature column for the model to update in place. Only
+	// the first zoneCount() entries are in use, and the array is replaced if
+	// more zones are added.
+	//
+	float[] temperatures() {
+		return this.temperature;
+	}
+
+	//
+	// temperatures()
+	// ==============
+	// Replaces the temperature column with one the model has written the new
+	// temperatures to. The column must be at least as long as the current
+	// one.
+	//
+	// returns			The previous column, which the model can reuse.
+	//
+	float[] temperatures(float[] column) {
+		float[] previous = this.temperature;
+
+		if (column.length < previous.length) {
+			throw new IllegalArgumentException("Temperature column of " + column.length + " is shorter than " + previous.length);
+		}
+		this.temperature = column;
+		return previous;
+	}
+
+	//
+	// setpoints()
+	// ===========
+	// As temperatures(), for the setpoint column.
+	//
+	float[] setpoints() {
+		return this.setpoint;
+	}
+
+	//
+	// actuators()
+	// ===========
+	// As temperatures(), for the actuator column.
+	//
+	float[] actuators() {
+		return this.actuator;
+	}
+
+	//
+	// grow()
+	// ======
+	private void grow(int capacity) {
+		temperature = Arrays.copyOf(temperature, capacity);
+		setpoint = Arrays.copyOf(setpoint, capacity);
+		actuator = Arrays.copyOf(actuator, capacity);
+	}
+
+	//
+	// checkZone()
+	// ===========
+	// The columns can be longer than the number of zones, so zone ids past
+	// the last zone are rejected here rather than by the array bounds.
+	//
+	private int checkZone(int zone) {
+		if ((zone < 0) || (zone >= zoneCount)) {
+			throw new IndexOutOfBoundsException("Zone " + zone + " is not in the store of " + zoneCount + " zones");
+		}
+		return zone;
+	}
+}
@@ -0,0 +1,226 @@
+//
+// ZONE SUBSCRIPTIONS
+// ==================
+// Pushes the temperature of a zone to the clients that have subscribed to it
+// whenever it changes, so that they do not have to poll for it.
+//
+// Documentation
+// =============
+// A client subscribes to a zone with a deadband. The current temperature is
+// sent straight away, and after that a new one is only sent once it differs
+// from the last one sent to that client by more than its deadband. The
+// temperatures are sent in Fahrenheit, like the reply to GZ1, so the deadband
+// is in hundredths of a degree Fahrenheit and is compared with the values
+// the client actually receives. With a deadband of 0, every change is sent.
+//
+// The Environment calls publish() with each new ZoneSnapshot at the end of a
+// tick. The subscribers are held in a list per zone, so a zone that no client
+// has subscribed to costs nothing, and a zone whose temperature has not
+// changed since the last tick is skipped without looking at its subscribers.
+// When a zone has changed, its packet is encoded once for each protocol and
+// the same encoded packet is queued on every subscriber that is due one. The
+// subscribers' sessions are queued on their reactors to be flushed, and once
+// every zone has been published each of those reactors is woken just once,
+// however many of its clients were sent a temperature.
+//
+// The subscriber lists are copy-on-write, so clients can subscribe and
+// unsubscribe from the server threads while the tick thread is publishing.
+// The last temperature sent to a subscriber is only updated by the tick
+// thread. A client that subscribes while a tick is being published may be
+// sent the temperature from before that tick, so after a new subscription
+// every zone is checked on the next tick, whether it has changed or not.
+//
+// Revision History
+// ================
+// 17.10.2026 Original version.
+// 17.10.2026 The deadband is now compared with the Fahrenheit temperature
+//            that is sent. Each reactor is woken once per publish() rather
+//            than once per subscriber.
+//
+package HVACsim;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ZoneSubscriptions {
+	private final ArrayList<CopyOnWriteArrayList<Subscriber>> zones;
+
+	// Temperature of each zone at the last publish(), so that zones that have
+	// not changed can be skipped.
+	private final int[] published;
+
+	// Set when a client subscribes, so that the next publish() checks every
+	// zone.
+	private volatile boolean subscribed = false;
+
+	// The reactors to wake at the end of publish(). Only used on the tick
+	// thread.
+	private final ArrayList<NIOreactor> reactors = new ArrayList<NIOreactor>();
+
+	//
+	// Subscriber
+	// ==========
+	private static final class Subscriber {
+		final NIOresponse response;
+		final int deadband;
+
+		// The last temperature sent, in centi-degrees Fahrenheit.
+		int lastSent;
+
+		Subscriber(NIOresponse response, int deadband, int lastSent) {
+			this.response = response;
+			this.deadband = deadband;
+			this.lastSent = lastSent;
+		}
+	}
+
+	//
+	// ZoneSubscriptions()
+	// ===================
+	// zoneCount		Number of zones that can be subscribed to.
+	//
+	public ZoneSubscriptions(int zoneCount) {
+		zones = new ArrayList<CopyOnWriteArrayList<Subscriber>>(zoneCount);
+		published = new int[zoneCount];
+		for (int zone = 0; zone < zoneCount; zone++) {
+			zones.add(new CopyOnWriteArrayList<Subscriber>());
+			published[zone] = Integer.MIN_VALUE;
+		}
+	}
+
+	//
+	// subscribe()
+	// ===========
+	// Subscribes a client to a zone, replacing any subscription it already
+	// has to it, and sends it the zone's current temperature.
+	//
+	// deadband			Largest change, in centi-degrees Fahrenheit, that is
+	//					not sent.
+	//
+	public void subscribe(NIOresponse response, int zone, int deadband, ZoneSnapshot snapshot) {
+		CopyOnWriteArrayList<Subscriber> subscribers = zones.get(zone);
+		int temperature = Temperature.toFahrenheit(snapshot.temperature(zone));
+
+		remove(subscribers, response);
+		send(response, zone, temperature);
+		response.flush();
+		subscribers.add(new Subscriber(response, Math.max(0, deadband), temperature));
+		subscribed = true;
+	}
+
+	//
+	// unsubscribe()
+	// =============
+	// Removes a client's subscription to a zone.
+	//
+	public void unsubscribe(NIOresponse response, int zone) {
+		if ((zone >= 0) && (zone < zones.size())) {
+			remove(zones.get(zone), response);
+		}
+	}
+
+	//
+	// unsubscribeAll()
+	// ================
+	// Removes all of a client's subscriptions, such as when it disconnects.
+	//
+	public void unsubscribeAll(NIOresponse response) {
+		for (int zone = 0; zone < zones.size(); zone++) {
+			remove(zones.get(zone), response);
+		}
+	}
+
+	//
+	// publish()
+	// =========
+	// Sends the temperature of each changed zone to its subscribers that are
+	// due one, then wakes each of their reactors once to send them. Called
+	// on the tick thread.
+	//
+	public void publish(ZoneSnapshot snapshot) {
+		int zoneCount = Math.min(zones.size(), snapshot.zoneCount());
+		boolean checkAll = subscribed;
+
+		subscribed = false;
+		for (int zone = 0; zone < zoneCount; zone++) {
+			CopyOnWriteArrayList<Subscriber> subscribers = zones.get(zone);
+			int temperature = snapshot.temperature(zone);
+			ByteBuffer textPacket = null;
+			ByteBuffer binaryPacket = null;
+
+			if (subscribers.isEmpty() || ((temperature == published[zone]) && !checkAll)) {
+				continue;
+			}
+			published[zone] = temperature;
+			temperature = Temperature.toFahrenheit(temperature);
+			for (Subscriber subscriber : subscribers) {
+				if (Math.abs(temperature - subscriber.lastSent) > subscriber.deadband) {
+					if (subscriber.response.isBinary()) {
+						if (binaryPacket == null) {
+							binaryPacket = encode(zone, temperature, true);
+						}
+						subscriber.response.packet(binaryPacket);
+					} else {
+						if (textPacket == null) {
+							textPacket = encode(zone, temperature, false);
+						}
+						subscriber.response.packet(textPacket);
+					}
+					NIOreactor reactor = subscriber.response.queueFlush();
+					if ((reactor != null) && !reactors.contains(reactor)) {
+						reactors.add(reactor);
+					}
+					subscriber.lastSent = temperature;
+				}
+			}
+		}
+		for (int i = 0; i < reactors.size(); i++) {
+			reactors.get(i).wakeup();
+		}
+		reactors.clear();
+	}
+
+	//
+	// get subscriberCount()
+	// =====================
+	// Returns the number of clients subscribed to a zone.
+	//
+	public int subscriberCount(int zone) {
+		return zones.get(zone).size();
+	}
+
+	//
+	// send()
+	// ======
+	private static void send(NIOresponse response, int zone, int temperature) {
+		response.packet(encode(zone, temperature, response.isBinary()));
+	}
+
+	//
+	// encode()
+	// ========
+	// Encodes the packet that tells a client the temperature of a zone, given
+	// in centi-degrees Fahrenheit. This is the same as the reply to GZ1, such
+	// as "*GZ1|57.74|&", named after the zone. Binary clients are sent the SUB
+	// opcode with the zone number and the temperature, both as values.
+	//
+	private static ByteBuffer encode(int zone, int fahrenheitTemperature, boolean binary) {
+		if (binary) {
+			return NIOresponse.encodeValues(Environment.OP_SUB, zone + 1, fahrenheitTemperature);
+		} else {
+			return NIOresponse.encodeDecimal("GZ" + (zone + 1), fahrenheitTemperature, Temperature.DECIMALS);
+		}
+	}
+
+	//
+	// remove()
+	// ========
+	private static void remove(CopyOnWriteArrayList<Subscriber> subscribers, NIOresponse response) {
+		for (Subscriber subscriber : subscribers) {
+			if (subscriber.response == response) {
+				subscribers.remove(subscriber);
+			}
+		}
+	}
+}